@@ -15,4 +15,11 @@
 # limitations under the License.
 
 libdir=`dirname "$0"`/../framework
+# With --batch, extract the markers of all dex files in the given directories and archives in a
+# single JVM, see BatchExtractMarker.
+if [ "$1" = "--batch" ]; then
+  shift
+  exec java -Dcom.android.tools.r8.dexContainerExperiment -cp $libdir/extractmarker.jar \
+    com.android.tools.r8wrappers.extractmarker.BatchExtractMarker "$@"
+fi
 java -Dcom.android.tools.r8.dexContainerExperiment -jar $libdir/extractmarker.jar $@
@@ -0,0 +1,60 @@
+#!/bin/bash
+#
+# Copyright (C) 2026 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Sourced by the d8, r8 and retrace launchers.
+#
+# cdsExec <name> <jar> <java arguments>... runs java with the given arguments and does not return.
+# When R8_CDS_DIR names a directory for application class-data sharing (AppCDS) archives, the run
+# uses the archive of <name> for <jar> and the JDK, which cuts JVM startup and class loading.
+# Otherwise, java is run with exactly the given arguments.
+#
+# The first successful run with JDK 13 or later dumps the archive to a file of its own that is
+# renamed into place, so concurrent first runs neither read nor write a partial archive.
+cdsExec() {
+    local name="$1"
+    local jar="$2"
+    shift 2
+    local cdsArchive=""
+    if [ -n "${R8_CDS_DIR}" ] && mkdir -p "${R8_CDS_DIR}" 2>/dev/null \
+        && [ -w "${R8_CDS_DIR}" ]; then
+        local javaHome
+        javaHome=`command -v java` && javaHome=`realpath "${javaHome}" 2>/dev/null` \
+            && javaHome=`dirname "$(dirname "${javaHome}")"`
+        local javaMajor
+        javaMajor=`sed -n 's/^JAVA_VERSION="\([0-9]*\).*/\1/p' "${javaHome}/release" 2>/dev/null`
+        if [ -n "${javaMajor}" ] && [ "${javaMajor}" -ge 13 ]; then
+            local cdsKey
+            cdsKey=`ls -lL "${jar}" "${javaHome}/release" 2>/dev/null | cksum | cut -d ' ' -f 1`
+            cdsArchive="${R8_CDS_DIR}/${name}-${cdsKey}.jsa"
+        fi
+    fi
+
+    if [ -z "${cdsArchive}" ]; then
+        exec java "$@"
+    fi
+    if [ -r "${cdsArchive}" ]; then
+        exec java -Xlog:cds=off -Xlog:cds+dynamic=off "-XX:SharedArchiveFile=${cdsArchive}" "$@"
+    fi
+    # Global, so that the exit trap can still remove it.
+    cdsDump="${cdsArchive}.$$.tmp"
+    trap 'rm -f "${cdsDump}"' EXIT
+    java -Xlog:cds=off -Xlog:cds+dynamic=off "-XX:ArchiveClassesAtExit=${cdsDump}" "$@"
+    local status=$?
+    if [ ${status} -eq 0 ] && [ -s "${cdsDump}" ]; then
+        mv -f "${cdsDump}" "${cdsArchive}"
+    fi
+    exit ${status}
+}
@@ -0,0 +1,53 @@
+#!/bin/bash
+#
+# Copyright (C) 2026 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Launcher for r8 in the Android tree. It runs the jar like the default launcher of Soong's
+# java_binary_host, build/soong/scripts/jar-wrapper.sh, with the same JVM options. When
+# R8_CDS_DIR is set, it also uses an AppCDS archive, see r8-cds.sh.
+
+prog="$0"
+while [ -h "${prog}" ]; do
+    newProg=`/bin/ls -ld "${prog}"`
+    newProg=`expr "${newProg}" : ".* -> \(.*\)$"`
+    if expr "x${newProg}" : 'x/' >/dev/null; then
+        prog="${newProg}"
+    else
+        progdir=`dirname "${prog}"`
+        prog="${progdir}/${newProg}"
+    fi
+done
+progdir=`cd "$(dirname "${prog}")" && pwd`
+
+jarfile=r8.jar
+libdir=`dirname "$progdir"`/framework
+
+if [ ! -r "$libdir/$jarfile" ]; then
+    echo `basename "$prog"`": can't find $jarfile"
+    exit 1
+fi
+jarpath="$libdir/$jarfile"
+
+# Initial parameters of the form "-J<stuff>" are passed to the Java invocation.
+declare -a javaOpts=()
+while expr "x$1" : 'x-J' >/dev/null; do
+    opt=`expr "$1" : '-J-\{0,1\}\(.*\)'`
+    javaOpts+=("-${opt}")
+    shift
+done
+
+. "$progdir/r8-cds.sh"
+cdsExec r8 "$jarpath" -XX:OnError="cat hs_err_pid%p.log" -XX:CICompilerCount=6 \
+    -XX:+UseDynamicNumberOfGCThreads "${javaOpts[@]}" -jar "$jarpath" "$@"
@@ -15,7 +15,6 @@
  */
 package com.android.tools.r8wrappers;
 
-import com.android.tools.r8.ArchiveProgramResourceProvider;
 import com.android.tools.r8.CompilationFailedException;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
@@ -23,8 +22,27 @@ import com.android.tools.r8.ParseFlagInfo;
 import com.android.tools.r8.ParseFlagPrinter;
 import com.android.tools.r8.Version;
 import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8wrappers.utils.BatchManifest;
+import com.android.tools.r8wrappers.utils.ClassFileArchiveReader;
+import com.android.tools.r8wrappers.utils.ClassFileInput;
+import com.android.tools.r8wrappers.utils.CompilerArguments;
+import com.android.tools.r8wrappers.utils.CompilerProperties;
+import com.android.tools.r8wrappers.utils.ContentHash;
+import com.android.tools.r8wrappers.utils.DepsFileWriter;
+import com.android.tools.r8wrappers.utils.DexContainer;
+import com.android.tools.r8wrappers.utils.DiagnosticsRules;
+import com.android.tools.r8wrappers.utils.MetricsLog;
+import com.android.tools.r8wrappers.utils.PeakHeap;
+import com.android.tools.r8wrappers.utils.PerClassDexCache;
+import com.android.tools.r8wrappers.utils.PersistentWorker;
+import com.android.tools.r8wrappers.utils.ShardedDexCompilation;
+import com.android.tools.r8wrappers.utils.StartupProfile;
+import com.android.tools.r8wrappers.utils.TraceProfile;
+import com.android.tools.r8wrappers.utils.UnchangedOutputs;
 import com.android.tools.r8wrappers.utils.WrapperDiagnosticsHandler;
 import com.android.tools.r8wrappers.utils.WrapperFlag;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -46,10 +64,58 @@ public class D8Wrapper {
 
   private static final String NO_DEX_FLAG = "--no-dex-input-jar";
   private static final String INFO_FLAG = "--info";
+  private static final String DEX_CACHE_FLAG = "--dex-cache";
+  private static final String DEPS_FILE_FLAG = "--deps-file";
   private static List<ParseFlagInfo> getAdditionalFlagsInfo() {
     return Arrays.asList(
         new WrapperFlag(NO_DEX_FLAG, "Input archive with potential all dex code ignored."),
-        new WrapperFlag(INFO_FLAG, "Print the info-level log messages from the compiler."));
+        new WrapperFlag(INFO_FLAG, "Print the info-level log messages from the compiler."),
+        new WrapperFlag(
+            WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG + " <n>",
+            "Print at most <n> warnings and infos of each kind (default 100), then a summary."),
+        new WrapperFlag(
+            WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG + " <file>",
+            "Write all diagnostics to <file> as JSON lines, also those not printed."),
+        new WrapperFlag(
+            DiagnosticsRules.DIAGNOSTICS_RULES_FLAG + " <file>",
+            "Override diagnostics levels by kind, type and origin with the rules in <file>."),
+        new WrapperFlag(
+            DEX_CACHE_FLAG + " <dir>",
+            "Reuse per-class dex for unchanged classes from the cache in <dir>."),
+        new WrapperFlag(DEPS_FILE_FLAG + " <file>", "Write input dependencies to <file>."),
+        new WrapperFlag(
+            DexContainer.DEX_CONTAINER_FLAG,
+            "Write multi-dex output as a single DEX container with shared string data."),
+        new WrapperFlag(
+            DexContainer.DEX_CONTAINER_REPORT_FLAG + " <file>",
+            "Write the size of the dex output and of the equivalent classic dex to <file>."),
+        new WrapperFlag(
+            StartupProfile.STARTUP_PROFILE_FLAG + " <file>",
+            "Lay out the startup code of the ART profile <file> first, in the primary dex."),
+        new WrapperFlag(
+            ShardedDexCompilation.SHARD_SIZE_FLAG + " <bytes>",
+            "Compile the program in shards of about <bytes> of class files and merge them."),
+        new WrapperFlag(
+            ShardedDexCompilation.SHARD_THREADS_FLAG + " <n>",
+            "Number of shards to compile in parallel (default 1)."),
+        new WrapperFlag(
+            TraceProfile.PROFILE_OUTPUT_FLAG + " <file>",
+            "Write a Chrome trace event profile of the phases, GCs and heap usage to <file>."),
+        new WrapperFlag(
+            MetricsLog.METRICS_LOG_FLAG + " <file>",
+            "Append a JSON line with the metrics of the compilation to <file>."),
+        new WrapperFlag(
+            UnchangedOutputs.PRESERVE_UNCHANGED_OUTPUTS_FLAG,
+            "Leave byte-identical code outputs untouched, for use with ninja restat."),
+        new WrapperFlag(
+            PersistentWorker.PERSISTENT_WORKER_FLAG,
+            "Run as a Bazel persistent worker using the JSON protocol (multiplex supported)."),
+        new WrapperFlag(
+            BatchManifest.BATCH_MANIFEST_FLAG + " <file>",
+            "Run the jobs {\"arguments\": [...], \"diagnostics\": <file>} listed in <file>."),
+        new WrapperFlag(
+            BatchManifest.BATCH_THREADS_FLAG + " <n>",
+            "Number of " + BatchManifest.BATCH_MANIFEST_FLAG + " jobs to run in parallel."));
   }
 
   private static String getUsageMessage() {
@@ -75,29 +141,324 @@ public class D8Wrapper {
     return builder;
   }
 
-  public static void main(String[] args) throws CompilationFailedException {
-    D8Wrapper wrapper = new D8Wrapper();
-    String[] remainingArgs = wrapper.parseWrapperArguments(args);
-    D8Command.Builder builder = D8Command.parse(
-        remainingArgs, CLI_ORIGIN, wrapper.diagnosticsHandler);
+  public static void main(String[] args)
+      throws CompilationFailedException, IOException, InterruptedException {
+    if (PersistentWorker.isPersistentWorker(args)) {
+      PersistentWorker.run(D8Wrapper::runWorkRequest);
+      return;
+    }
+    if (BatchManifest.isBatchManifest(args)) {
+      int exitCode = BatchManifest.run(args, D8Wrapper::runWorkRequest);
+      if (exitCode != 0) {
+        System.exit(exitCode);
+      }
+      return;
+    }
+    new D8Wrapper(System.out).run(args);
+  }
+
+  private static int runWorkRequest(String[] args, PrintStream output) throws IOException {
+    D8Wrapper wrapper = new D8Wrapper(output);
+    wrapper.diagnosticsHandler.setOutput(output);
+    try {
+      wrapper.run(args);
+      return 0;
+    } catch (CompilationFailedException e) {
+      // The cause has already been reported through the diagnostics handler.
+      return 1;
+    }
+  }
+
+  private void run(String[] args) throws CompilationFailedException, IOException {
+    String[] remainingArgs = parseWrapperArguments(args);
+    if (profileOutput != null) {
+      profile.recordGarbageCollections();
+    }
+    boolean success = false;
+    PeakHeap.Measurement peakHeap = metricsLog != null ? PeakHeap.start() : null;
+    try {
+      runCompilation(remainingArgs);
+      success = true;
+    } finally {
+      long peakHeapBytes = -1;
+      if (peakHeap != null) {
+        peakHeapBytes = peakHeap.getPeakBytes();
+        peakHeap.close();
+      }
+      if (profileOutput != null) {
+        profile.write(profileOutput);
+      }
+      if (metricsLog != null) {
+        try {
+          metrics.append(metricsLog, success, peakHeapBytes);
+        } catch (IOException | RuntimeException e) {
+          // Metrics must not fail the compilation or hide its failure.
+          diagnosticsHandler.warning("Failed to append metrics to " + metricsLog + ": " + e);
+        }
+      }
+      diagnosticsHandler.finish();
+    }
+  }
+
+  @SuppressWarnings("try")
+  private void runCompilation(String[] remainingArgs)
+      throws CompilationFailedException, IOException {
+    D8Command.Builder builder = D8Command.parse(remainingArgs, CLI_ORIGIN, diagnosticsHandler);
+    profile.complete("parse arguments", profile.getStartTime());
     if (builder.isPrintHelp()) {
-      System.out.println(getUsageMessage());
+      output.println(getUsageMessage());
       return;
     }
     if (builder.isPrintVersion()) {
-      System.out.println("D8(" + WRAPPER_STRING + ") " + Version.getVersionString());
+      output.println("D8(" + WRAPPER_STRING + ") " + Version.getVersionString());
       return;
     }
-    wrapper.applyWrapperArguments(builder);
-    R8Wrapper.applyCommonCompilerArguments(builder);
-    D8.run(builder.build());
+    profile.setName("d8 " + builder.getOutputPath());
+    if (metricsLog != null) {
+      metrics.setOutput(builder.getOutputPath());
+      metrics.addInputs(
+          CompilerArguments.split(remainingArgs, D8Command.getParseFlagsInformation())
+              .getInputs());
+      metrics.addInputs(noDexArchives);
+    }
+    try (TraceProfile.Phase phase = profile.begin("setup")) {
+      applyWrapperArguments(builder);
+      R8Wrapper.applyCommonCompilerArguments(builder, properties);
+    }
+    Path codeOutput = builder.getOutputPath();
+    boolean redirectOutput = preserveUnchangedOutputs && codeOutput != null;
+    try (UnchangedOutputs unchangedOutputs =
+        redirectOutput ? UnchangedOutputs.redirect(builder) : null) {
+      compile(builder, remainingArgs);
+      if (unchangedOutputs != null) {
+        try (TraceProfile.Phase phase = profile.begin("commit changed outputs")) {
+          unchangedOutputs.commit();
+        }
+      }
+    }
+    if (depsOutput != null && codeOutput != null) {
+      try (TraceProfile.Phase phase = profile.begin("write deps file")) {
+        writeDepsFile(remainingArgs, codeOutput);
+      }
+    }
+    if (dexContainerReport != null && codeOutput != null) {
+      try (TraceProfile.Phase phase = profile.begin("dex container report")) {
+        diagnosticsHandler.info(DexContainer.writeReport(codeOutput, dexContainerReport));
+      }
+    }
+    if (printInfoDiagnostics && !startupProfiles.isEmpty()) {
+      List<Path> programArchives = new ArrayList<>(noDexArchives);
+      for (Path input :
+          CompilerArguments.split(remainingArgs, D8Command.getParseFlagsInformation())
+              .getInputs()) {
+        if (ClassFileInput.isArchive(input) && Files.isRegularFile(input)) {
+          programArchives.add(input);
+        }
+      }
+      for (StartupProfile startupProfile : startupProfiles) {
+        diagnosticsHandler.info(startupProfile.getReport(programArchives));
+      }
+    }
+  }
+
+  private void compile(D8Command.Builder builder, String[] remainingArgs)
+      throws CompilationFailedException, IOException {
+    if (!startupProfiles.isEmpty() && (dexCacheDirectory != null || shardSize > 0)) {
+      // The startup layout is determined for the whole program, not per class or shard.
+      diagnosticsHandler.warning(
+          "Ignoring "
+              + DEX_CACHE_FLAG
+              + " and "
+              + ShardedDexCompilation.SHARD_SIZE_FLAG
+              + " with "
+              + StartupProfile.STARTUP_PROFILE_FLAG
+              + ".");
+    } else if (dexCacheDirectory != null) {
+      CompilerArguments arguments =
+          CompilerArguments.split(remainingArgs, D8Command.getParseFlagsInformation());
+      if (PerClassDexCache.supports(arguments)) {
+        compileWithDexCache(builder, arguments);
+        return;
+      }
+      diagnosticsHandler.warning(
+          "Ignoring "
+              + DEX_CACHE_FLAG
+              + " which only supports class file archive inputs and indexed output.");
+    } else if (shardSize > 0) {
+      CompilerArguments arguments =
+          CompilerArguments.split(remainingArgs, D8Command.getParseFlagsInformation());
+      if (ShardedDexCompilation.supports(arguments)) {
+        compileInShards(builder, arguments);
+        return;
+      }
+      diagnosticsHandler.warning(
+          "Ignoring "
+              + ShardedDexCompilation.SHARD_SIZE_FLAG
+              + " which only supports class file archive inputs and indexed output.");
+    }
+    runD8(builder);
+  }
+
+  @SuppressWarnings("try")
+  private void runD8(D8Command.Builder builder) throws CompilationFailedException {
+    // Time spent waiting for compilations with other compiler properties is not part of the phase.
+    properties.runWith(
+        () -> {
+          try (TraceProfile.Phase phase = profile.begin("D8.run")) {
+            D8.run(builder.build());
+          }
+        });
+  }
+
+  private void compileWithDexCache(D8Command.Builder builder, CompilerArguments arguments)
+      throws CompilationFailedException, IOException {
+    List<ClassFileInput> classes = readProgramClasses(arguments);
+    String[] options = arguments.getOptions().toArray(new String[0]);
+    // The output of the builder may have been redirected since parsing the options.
+    Path codeOutput = builder.getOutputPath();
+    PerClassDexCache cache =
+        new PerClassDexCache(dexCacheDirectory, getDexCacheConfiguration(builder, arguments));
+    cache.compile(
+        classes,
+        () -> {
+          D8Command.Builder cacheBuilder =
+              D8Command.parse(options, CLI_ORIGIN, diagnosticsHandler);
+          if (codeOutput != null) {
+            cacheBuilder.setOutput(codeOutput, cacheBuilder.getOutputMode());
+          }
+          return cacheBuilder;
+        },
+        this::runD8);
+    diagnosticsHandler.info(
+        "Dex cache hits: " + cache.getHits() + ", misses: " + cache.getMisses());
+  }
+
+  private void compileInShards(D8Command.Builder builder, CompilerArguments arguments)
+      throws CompilationFailedException, IOException {
+    // Shards read their class files from the archives, so they are not read here.
+    List<Path> archives = new ArrayList<>(arguments.getInputs());
+    archives.addAll(noDexArchives);
+    String[] options = arguments.getOptions().toArray(new String[0]);
+    // The output of the builder may have been redirected since parsing the options.
+    Path codeOutput = builder.getOutputPath();
+    ShardedDexCompilation compilation = new ShardedDexCompilation(shardSize, shardThreads);
+    compilation.compile(
+        archives,
+        () -> {
+          D8Command.Builder shardBuilder =
+              D8Command.parse(options, CLI_ORIGIN, diagnosticsHandler);
+          if (codeOutput != null) {
+            shardBuilder.setOutput(codeOutput, shardBuilder.getOutputMode());
+          }
+          return shardBuilder;
+        },
+        this::runD8);
+    diagnosticsHandler.info("Compiled " + compilation.getShardCount() + " shards.");
+  }
+
+  private List<ClassFileInput> readProgramClasses(CompilerArguments arguments)
+      throws IOException {
+    List<ClassFileInput> classes = new ArrayList<>();
+    for (Path input : arguments.getInputs()) {
+      classes.addAll(ClassFileInput.readArchive(input));
+    }
+    for (Path input : noDexArchives) {
+      classes.addAll(ClassFileArchiveReader.readClasses(input));
+    }
+    return classes;
+  }
+
+  /**
+   * Writes the inputs of the compilation: argument files, program inputs, no-dex archives, and
+   * the files given as option values, e.g., to --lib or --classpath.
+   */
+  private void writeDepsFile(String[] remainingArgs, Path codeOutput) throws IOException {
+    Path target = Files.isDirectory(codeOutput) ? codeOutput.resolve("classes.dex") : codeOutput;
+    DepsFileWriter writer = new DepsFileWriter(target, depsOutput.toString());
+    for (String arg : remainingArgs) {
+      if (arg.startsWith("@")) {
+        writer.accept(CLI_ORIGIN, Paths.get(arg.substring(1)));
+      }
+    }
+    CompilerArguments arguments =
+        CompilerArguments.split(remainingArgs, D8Command.getParseFlagsInformation());
+    for (Path input : arguments.getInputs()) {
+      writer.accept(CLI_ORIGIN, input);
+    }
+    for (Path input : noDexArchives) {
+      writer.accept(CLI_ORIGIN, input);
+    }
+    for (StartupProfile startupProfile : startupProfiles) {
+      writer.accept(CLI_ORIGIN, startupProfile.getPath());
+    }
+    List<String> options = arguments.getOptions();
+    for (int i = 0; i < options.size(); i++) {
+      String option = options.get(i);
+      if (CompilerArguments.OUTPUT_FLAGS.contains(option)) {
+        i++;
+        continue;
+      }
+      Path path = Paths.get(option);
+      if (Files.isRegularFile(path)) {
+        writer.accept(CLI_ORIGIN, path);
+      }
+    }
+    writer.finished();
+  }
+
+  /**
+   * Hash of everything other than the class itself that determines its dex: the compiler version,
+   * min API level, mode, compiler properties, and the options with files replaced by their content.
+   * This covers the library, classpath and desugared library configuration.
+   */
+  private String getDexCacheConfiguration(D8Command.Builder builder, CompilerArguments arguments)
+      throws IOException {
+    ContentHash hash =
+        new ContentHash()
+            .add(Version.getVersionString())
+            .add(builder.getMinApiLevel())
+            .add(String.valueOf(builder.getMode()));
+    properties.getProperties().forEach((key, value) -> hash.add(key).add(value));
+    List<String> options = arguments.getOptions();
+    for (int i = 0; i < options.size(); i++) {
+      String option = options.get(i);
+      if (CompilerArguments.OUTPUT_FLAGS.contains(option)) {
+        i++;
+        continue;
+      }
+      Path path = Paths.get(option);
+      if (Files.isRegularFile(path)) {
+        hash.addFile(path);
+      } else {
+        hash.add(option);
+      }
+    }
+    return hash.hash();
   }
 
+  private final PrintStream output;
+  private final CompilerProperties properties = new CompilerProperties();
+  private final TraceProfile profile = new TraceProfile("d8");
+  private Path profileOutput = null;
+  private final MetricsLog metrics = new MetricsLog("d8");
+  private Path metricsLog = null;
   private WrapperDiagnosticsHandler diagnosticsHandler = new WrapperDiagnosticsHandler();
   private boolean printInfoDiagnostics = false;
   private List<Path> noDexArchives = new ArrayList<>();
+  private Path dexCacheDirectory = null;
+  private Path depsOutput = null;
+  private boolean preserveUnchangedOutputs = false;
+  private long shardSize = 0;
+  private int shardThreads = 1;
+  private final List<StartupProfile> startupProfiles = new ArrayList<>();
+  private boolean dexContainer = false;
+  private Path dexContainerReport = null;
 
-  private String[] parseWrapperArguments(String[] args) {
+  private D8Wrapper(PrintStream output) {
+    this.output = output;
+  }
+
+  private String[] parseWrapperArguments(String[] args) throws IOException {
     List<String> remainingArgs = new ArrayList<>();
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
@@ -119,6 +480,111 @@ public class D8Wrapper {
             noDexArchives.add(path);
             break;
           }
+        case DEX_CACHE_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException("Missing argument to " + DEX_CACHE_FLAG);
+            }
+            dexCacheDirectory = Paths.get(args[i]);
+            break;
+          }
+        case DEPS_FILE_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException("Missing argument to " + DEPS_FILE_FLAG);
+            }
+            depsOutput = Paths.get(args[i]);
+            break;
+          }
+        case ShardedDexCompilation.SHARD_SIZE_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + ShardedDexCompilation.SHARD_SIZE_FLAG);
+            }
+            shardSize = Long.parseLong(args[i]);
+            break;
+          }
+        case ShardedDexCompilation.SHARD_THREADS_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + ShardedDexCompilation.SHARD_THREADS_FLAG);
+            }
+            shardThreads = Integer.parseInt(args[i]);
+            break;
+          }
+        case DexContainer.DEX_CONTAINER_FLAG:
+          {
+            dexContainer = true;
+            break;
+          }
+        case DexContainer.DEX_CONTAINER_REPORT_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + DexContainer.DEX_CONTAINER_REPORT_FLAG);
+            }
+            dexContainerReport = Paths.get(args[i]);
+            break;
+          }
+        case StartupProfile.STARTUP_PROFILE_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + StartupProfile.STARTUP_PROFILE_FLAG);
+            }
+            startupProfiles.add(new StartupProfile(Paths.get(args[i])));
+            break;
+          }
+        case TraceProfile.PROFILE_OUTPUT_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException("Missing argument to " + TraceProfile.PROFILE_OUTPUT_FLAG);
+            }
+            profileOutput = Paths.get(args[i]);
+            break;
+          }
+        case MetricsLog.METRICS_LOG_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException("Missing argument to " + MetricsLog.METRICS_LOG_FLAG);
+            }
+            metricsLog = Paths.get(args[i]);
+            break;
+          }
+        case WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG);
+            }
+            diagnosticsHandler.setReport(Paths.get(args[i]));
+            break;
+          }
+        case WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG);
+            }
+            diagnosticsHandler.setLimit(Integer.parseInt(args[i]));
+            break;
+          }
+        case DiagnosticsRules.DIAGNOSTICS_RULES_FLAG:
+          {
+            if (++i >= args.length) {
+              throw new RuntimeException(
+                  "Missing argument to " + DiagnosticsRules.DIAGNOSTICS_RULES_FLAG);
+            }
+            diagnosticsHandler.addRules(Paths.get(args[i]));
+            break;
+          }
+        case UnchangedOutputs.PRESERVE_UNCHANGED_OUTPUTS_FLAG:
+          {
+            preserveUnchangedOutputs = true;
+            break;
+          }
         default:
           {
             remainingArgs.add(arg);
@@ -133,10 +599,11 @@ public class D8Wrapper {
     diagnosticsHandler.setWarnOnUnsupportedMainDexList(true);
     diagnosticsHandler.setPrintInfoDiagnostics(printInfoDiagnostics);
     for (Path path : noDexArchives) {
-      builder.addProgramResourceProvider(
-          ArchiveProgramResourceProvider.fromArchive(
-              path,
-              ArchiveProgramResourceProvider::includeClassFileEntries));
+      builder.addProgramResourceProvider(ClassFileArchiveReader.programProvider(path));
+    }
+    for (StartupProfile startupProfile : startupProfiles) {
+      builder.addStartupProfileProviders(startupProfile);
     }
+    properties.set(DexContainer.DEX_CONTAINER_PROPERTY, dexContainer);
   }
 }
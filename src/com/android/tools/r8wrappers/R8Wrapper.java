@@ -16,7 +16,6 @@
 package com.android.tools.r8wrappers;
 
 import com.android.tools.r8.AndroidResourceInput;
-import com.android.tools.r8.ArchiveProtoAndroidResourceConsumer;
 import com.android.tools.r8.ArchiveProtoAndroidResourceProvider;
 import com.android.tools.r8.BaseCompilerCommand;
 import com.android.tools.r8.CompilationFailedException;
@@ -30,12 +29,32 @@ import com.android.tools.r8.ResourcePath;
 import com.android.tools.r8.Version;
 import com.android.tools.r8.origin.Origin;
 import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8wrappers.utils.ActionCache;
+import com.android.tools.r8wrappers.utils.ArtProfileRewriting;
+import com.android.tools.r8wrappers.utils.ClassFileArchiveIndex;
+import com.android.tools.r8wrappers.utils.ClassFileInput;
+import com.android.tools.r8wrappers.utils.CompilerArguments;
+import com.android.tools.r8wrappers.utils.CompilerProperties;
 import com.android.tools.r8wrappers.utils.DepsFileWriter;
+import com.android.tools.r8wrappers.utils.DexContainer;
+import com.android.tools.r8wrappers.utils.DiagnosticsRules;
+import com.android.tools.r8wrappers.utils.GzipFiles;
+import com.android.tools.r8wrappers.utils.HeapAdmission;
+import com.android.tools.r8wrappers.utils.MapRegistry;
+import com.android.tools.r8wrappers.utils.MetricsLog;
+import com.android.tools.r8wrappers.utils.PartitionMapArchive;
+import com.android.tools.r8wrappers.utils.PeakHeap;
+import com.android.tools.r8wrappers.utils.PersistentWorker;
+import com.android.tools.r8wrappers.utils.RawCopyResourceConsumer;
+import com.android.tools.r8wrappers.utils.StartupProfile;
+import com.android.tools.r8wrappers.utils.TraceProfile;
+import com.android.tools.r8wrappers.utils.UnchangedOutputs;
 import com.android.tools.r8wrappers.utils.WrapperDiagnosticsHandler;
 import com.android.tools.r8wrappers.utils.WrapperFlag;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -43,7 +62,10 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class R8Wrapper {
 
@@ -57,10 +79,96 @@ public class R8Wrapper {
         }
       };
 
+  /** Flags whose values are output locations, which do not contribute to the action cache key. */
+  private static final List<String> OUTPUT_FLAGS =
+      concat(
+          CompilerArguments.OUTPUT_FLAGS,
+          "--deps-file",
+          "-printmapping",
+          "-printusage",
+          "-printseeds",
+          "-printconfiguration",
+          "--action-cache",
+          "--action-cache-max-size",
+          TraceProfile.PROFILE_OUTPUT_FLAG,
+          MetricsLog.METRICS_LOG_FLAG,
+          MapRegistry.MAP_REGISTRY_FLAG,
+          PartitionMapArchive.PARTITION_MAP_OUTPUT_FLAG,
+          WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG,
+          WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG,
+          DexContainer.DEX_CONTAINER_REPORT_FLAG);
+
+  /** Flags with an input and an output value. */
+  private static final List<String> INPUT_OUTPUT_FLAGS =
+      Arrays.asList(ArtProfileRewriting.ART_PROFILE_FLAG);
+
+  private static final long DEFAULT_ACTION_CACHE_MAX_SIZE = 8L << 30;
+
+  /** Heap estimate per byte of program input until a compilation of the output was observed. */
+  private static final long HEAP_PER_INPUT_BYTE = 24;
+
+  /** Admission control of the concurrent requests of a persistent worker. */
+  private static HeapAdmission heapAdmission = null;
+
   private static List<ParseFlagInfo> getAdditionalFlagsInfo() {
     return Arrays.asList(
         new WrapperFlag("--deps-file <file>", "Write input dependencies to <file>."),
+        new WrapperFlag(
+            TraceProfile.PROFILE_OUTPUT_FLAG + " <file>",
+            "Write a Chrome trace event profile of the phases, GCs and heap usage to <file>."),
+        new WrapperFlag(
+            MetricsLog.METRICS_LOG_FLAG + " <file>",
+            "Append a JSON line with the metrics of the compilation to <file>."),
+        new WrapperFlag(
+            MapRegistry.MAP_REGISTRY_FLAG + " <file>",
+            "Record the id, hash and path of the mapping file in the build-wide <file>."),
+        new WrapperFlag(
+            PartitionMapArchive.PARTITION_MAP_OUTPUT_FLAG + " <file>",
+            "Also write the mapping partitioned by class to <file>, for on-demand retrace."),
+        new WrapperFlag(
+            StartupProfile.STARTUP_PROFILE_FLAG + " <file>",
+            "Lay out the startup code of the ART profile <file> first, in the primary dex."),
+        new WrapperFlag(
+            GzipFiles.GZIP_PRINT_OUTPUTS_FLAG,
+            "Write the -printmapping, -printusage, -printseeds and -printconfiguration files"
+                + " gzip compressed."),
+        new WrapperFlag(
+            DexContainer.DEX_CONTAINER_FLAG,
+            "Write multi-dex output as a single DEX container with shared string data."),
+        new WrapperFlag(
+            DexContainer.DEX_CONTAINER_REPORT_FLAG + " <file>",
+            "Write the size of the dex output and of the equivalent classic dex to <file>."),
+        new WrapperFlag(
+            ArtProfileRewriting.ART_PROFILE_FLAG + " <input> <output>",
+            "Rewrite the ART profile <input> to the optimized program and write it to <output>."),
+        new WrapperFlag(
+            UnchangedOutputs.PRESERVE_UNCHANGED_OUTPUTS_FLAG,
+            "Leave byte-identical code outputs untouched, for use with ninja restat."),
+        new WrapperFlag(
+            "--action-cache <dir>",
+            "Restore all outputs from the cache in <dir> when inputs and flags are unchanged."),
+        new WrapperFlag(
+            "--action-cache-max-size <bytes>",
+            "Evict least recently used action cache entries above <bytes> (default 8 GiB)."),
         new WrapperFlag("--info", "Print the info-level log messages from the compiler."),
+        new WrapperFlag(
+            WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG + " <n>",
+            "Print at most <n> warnings and infos of each kind (default 100), then a summary."),
+        new WrapperFlag(
+            WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG + " <file>",
+            "Write all diagnostics to <file> as JSON lines, also those not printed."),
+        new WrapperFlag(
+            DiagnosticsRules.DIAGNOSTICS_RULES_FLAG + " <file>",
+            "Override diagnostics levels by kind, type and origin with the rules in <file>."),
+        new WrapperFlag(
+            PersistentWorker.PERSISTENT_WORKER_FLAG,
+            "Run as a Bazel persistent worker, sharing indexed --lib archives across requests."),
+        new WrapperFlag(
+            HeapAdmission.HEAP_BUDGET_FLAG + " <bytes>",
+            "Worker heap budget for concurrent requests (default 80% of the maximum heap)."),
+        new WrapperFlag(
+            HeapAdmission.HEAP_HISTORY_FLAG + " <file>",
+            "Estimate the heap of worker requests from the peaks in a --metrics-log <file>."),
         new WrapperFlag("--resource-input", "Resource input for the resource shrinker."),
         new WrapperFlag("--resource-output", "Resource shrinker output."),
         new WrapperFlag("--optimized-resource-shrinking", "Use R8 optimizing resource pipeline."),
@@ -92,6 +200,12 @@ public class R8Wrapper {
     return builder.toString();
   }
 
+  private static List<String> concat(List<String> list, String... more) {
+    List<String> result = new ArrayList<>(list);
+    result.addAll(Arrays.asList(more));
+    return Collections.unmodifiableList(result);
+  }
+
   private static StringBuilder appendLines(StringBuilder builder, String... lines) {
     for (String line : lines) {
       builder.append(line).append(System.lineSeparator());
@@ -99,51 +213,321 @@ public class R8Wrapper {
     return builder;
   }
 
-  public static void main(String[] args) throws CompilationFailedException, IOException {
+  public static void main(String[] args)
+      throws CompilationFailedException, IOException, InterruptedException {
+    if (PersistentWorker.isPersistentWorker(args)) {
+      heapAdmission = HeapAdmission.create("r8", args, HEAP_PER_INPUT_BYTE);
+      PersistentWorker.run(R8Wrapper::runWorkRequest);
+      return;
+    }
+    new R8Wrapper(System.out, false).run(args);
+  }
+
+  /** Compiler properties that apply to all R8 compilations in the platform build. */
+  private static void addDefaultCompilerProperties(CompilerProperties properties) {
     // Disable this optimization as it can impact weak reference semantics. See b/233432839.
-    System.setProperty("com.android.tools.r8.disableEnqueuerDeferredTracing", "1");
+    properties.set("com.android.tools.r8.disableEnqueuerDeferredTracing");
     // Disable class merging across different files to improve attribution. See b/242881914.
-    System.setProperty("com.android.tools.r8.enableSameFilePolicy", "1");
+    properties.set("com.android.tools.r8.enableSameFilePolicy");
     // Enable experimental -whyareyounotinlining config to aid debugging. See b/277389461.
-    System.setProperty("com.android.tools.r8.experimental.enablewhyareyounotinlining", "1");
+    properties.set("com.android.tools.r8.experimental.enablewhyareyounotinlining");
     // Allow use of -convertchecknotnull optimization. See b/280633711.
-    System.setProperty("com.android.tools.r8.experimental.enableconvertchecknotnull", "1");
+    properties.set("com.android.tools.r8.experimental.enableconvertchecknotnull");
     // Allow conditional keep rule application against library references. See b/386409781.
-    System.setProperty("com.android.tools.r8.applyIfRulesToLibrary", "1");
+    properties.set("com.android.tools.r8.applyIfRulesToLibrary");
     // Do not keep runtime invisible annotations with @KeepForApi. See b/399021897.
-    System.setProperty("com.android.tools.r8.keepanno.unkeepInvisibleAnnotationsInKeepForApi", "1");
-
-    R8Wrapper wrapper = new R8Wrapper();
-    String[] remainingArgs = wrapper.parseWrapperArguments(args);
-    if (!wrapper.useCompatPg && !wrapper.noImplicitDefaultInit) {
-      // Retain incorrect behavior in full mode that will implicitly keep default constructors.
-      // See b/132318799.
-      System.setProperty(
-          "com.android.tools.r8.enableEmptyMemberRulesToDefaultInitRuleConversion",
-          "1");
-    }
-    R8Command.Builder builder = R8Command.parse(
-        remainingArgs, CLI_ORIGIN, wrapper.diagnosticsHandler);
+    properties.set("com.android.tools.r8.keepanno.unkeepInvisibleAnnotationsInKeepForApi");
+  }
+
+  private static int runWorkRequest(String[] args, PrintStream output)
+      throws IOException, InterruptedException {
+    R8Wrapper wrapper = new R8Wrapper(output, true);
+    wrapper.diagnosticsHandler.setOutput(output);
+    try (HeapAdmission.Admission admission = admit(args)) {
+      try {
+        wrapper.run(args);
+      } finally {
+        if (wrapper.restoredFromCache) {
+          admission.discardPeak();
+        }
+      }
+      return 0;
+    } catch (CompilationFailedException e) {
+      // The cause has already been reported through the diagnostics handler.
+      return 1;
+    }
+  }
+
+  private static HeapAdmission.Admission admit(String[] args)
+      throws IOException, InterruptedException {
+    List<ParseFlagInfo> flags = new ArrayList<>(R8Command.getParseFlagsInformation());
+    flags.addAll(getAdditionalFlagsInfo());
+    CompilerArguments arguments = CompilerArguments.split(args, flags);
+    long inputBytes = 0;
+    for (Path input : arguments.getInputs()) {
+      // Values of unknown options, e.g., -printmapping, are split as inputs too.
+      String name = input.getFileName().toString();
+      boolean isProgramInput =
+          name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".class");
+      if (isProgramInput && Files.isRegularFile(input)) {
+        inputBytes += Files.size(input);
+      }
+    }
+    return heapAdmission.admit(arguments.getOptionValue("--output"), inputBytes);
+  }
+
+  private void run(String[] args) throws CompilationFailedException, IOException {
+    String[] remainingArgs = parseWrapperArguments(args);
+    if (profileOutput != null) {
+      profile.recordGarbageCollections();
+    }
+    boolean success = false;
+    PeakHeap.Measurement peakHeap = metricsLog != null ? PeakHeap.start() : null;
+    try {
+      runCompilation(args, remainingArgs);
+      success = true;
+    } finally {
+      long peakHeapBytes = -1;
+      if (peakHeap != null) {
+        // The heap of a compilation restored from the action cache is not that of a compilation.
+        peakHeapBytes = restoredFromCache ? -1 : peakHeap.getPeakBytes();
+        peakHeap.close();
+      }
+      if (profileOutput != null) {
+        profile.write(profileOutput);
+      }
+      for (ClassFileArchiveIndex index : libraryIndices) {
+        index.release();
+      }
+      for (GzipFiles.GzipStringConsumer consumer : gzipConsumers) {
+        consumer.discard();
+      }
+      if (resourceConsumer != null) {
+        resourceConsumer.discard();
+      }
+      if (metricsLog != null) {
+        try {
+          metrics.append(metricsLog, success, peakHeapBytes);
+        } catch (IOException | RuntimeException e) {
+          // Metrics must not fail the compilation or hide its failure.
+          diagnosticsHandler.warning("Failed to append metrics to " + metricsLog + ": " + e);
+        }
+      }
+      diagnosticsHandler.finish();
+    }
+  }
+
+  @SuppressWarnings("try")
+  private void runCompilation(String[] args, String[] remainingArgs)
+      throws CompilationFailedException, IOException {
+    addDefaultCompilerProperties(properties);
+    // Retain incorrect behavior in full mode that will implicitly keep default constructors.
+    // See b/132318799.
+    properties.set(
+        "com.android.tools.r8.enableEmptyMemberRulesToDefaultInitRuleConversion",
+        !useCompatPg && !noImplicitDefaultInit);
+    R8Command.Builder builder = R8Command.parse(remainingArgs, CLI_ORIGIN, diagnosticsHandler);
+    profile.complete("parse arguments", profile.getStartTime());
     if (builder.isPrintHelp()) {
-      System.out.println(getUsageMessage());
+      output.println(getUsageMessage());
       return;
     }
     if (builder.isPrintVersion()) {
-      System.out.println("R8(" + WRAPPER_STRING + ") " + Version.getVersionString());
+      output.println("R8(" + WRAPPER_STRING + ") " + Version.getVersionString());
       return;
     }
-    wrapper.applyWrapperArguments(builder);
-    applyCommonCompilerArguments(builder);
-    builder.setEnableExperimentalKeepAnnotations(true);
-    R8.run(builder.build());
+    profile.setName("r8 " + builder.getOutputPath());
+    if (metricsLog != null) {
+      metrics.setOutput(builder.getOutputPath());
+      metrics.addInputs(
+          CompilerArguments.split(remainingArgs, R8Command.getParseFlagsInformation())
+              .getInputs());
+    }
+    try (TraceProfile.Phase phase = profile.begin("setup")) {
+      applyWrapperArguments(builder);
+      applyCommonCompilerArguments(builder, properties);
+      builder.setEnableExperimentalKeepAnnotations(true);
+    }
+    Path codeOutput = builder.getOutputPath();
+    boolean redirectOutput = preserveUnchangedOutputs && codeOutput != null;
+    try (UnchangedOutputs unchangedOutputs =
+        redirectOutput ? UnchangedOutputs.redirect(builder) : null) {
+      if (actionCacheDirectory != null && diagnosticsReport != null) {
+        diagnosticsHandler.info(
+            "The action cache is not used with "
+                + WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG
+                + ", as it does not restore diagnostics.");
+      }
+      if (actionCacheDirectory != null && codeOutput != null && diagnosticsReport == null) {
+        runWithActionCache(args, remainingArgs, builder);
+      } else {
+        compile(builder);
+      }
+      if (unchangedOutputs != null) {
+        try (TraceProfile.Phase phase = profile.begin("commit changed outputs")) {
+          unchangedOutputs.commit();
+        }
+      }
+    }
+    if (dexContainerReport != null && codeOutput != null) {
+      try (TraceProfile.Phase phase = profile.begin("dex container report")) {
+        diagnosticsHandler.info(DexContainer.writeReport(codeOutput, dexContainerReport));
+      }
+    }
+    if (mapRegistry != null) {
+      registerMappingFile(remainingArgs);
+    }
+    if (printInfoDiagnostics && !startupProfiles.isEmpty()) {
+      reportStartupProfiles(remainingArgs);
+    }
+    if (resourceConsumer != null) {
+      diagnosticsHandler.info(
+          "Resource entries copied: "
+              + resourceConsumer.getCopied()
+              + ", rewritten: "
+              + resourceConsumer.getRewritten());
+    }
   }
 
+  private void reportStartupProfiles(String[] remainingArgs) throws IOException {
+    List<Path> programArchives = new ArrayList<>();
+    for (Path input :
+        CompilerArguments.split(remainingArgs, R8Command.getParseFlagsInformation()).getInputs()) {
+      if (ClassFileInput.isArchive(input) && Files.isRegularFile(input)) {
+        programArchives.add(input);
+      }
+    }
+    for (String rule : pgRules) {
+      if (rule.startsWith("-injars ")) {
+        Path input = Paths.get(rule.substring("-injars ".length()));
+        if (ClassFileInput.isArchive(input) && Files.isRegularFile(input)) {
+          programArchives.add(input);
+        }
+      }
+    }
+    for (StartupProfile startupProfile : startupProfiles) {
+      diagnosticsHandler.info(startupProfile.getReport(programArchives));
+    }
+  }
+
+  @SuppressWarnings("try")
+  private void registerMappingFile(String[] remainingArgs) throws IOException {
+    Path map = printOutputs.get("-printmapping");
+    if (map == null) {
+      String value =
+          CompilerArguments.split(remainingArgs, R8Command.getParseFlagsInformation())
+              .getOptionValue("--pg-map-output");
+      map = value == null ? null : Paths.get(value);
+    }
+    if (map == null || !Files.isRegularFile(map)) {
+      return;
+    }
+    try (TraceProfile.Phase phase = profile.begin("register mapping file")) {
+      if (!MapRegistry.register(mapRegistry, map, partitionMapOutput)) {
+        diagnosticsHandler.info("No map id in " + map + ", not added to " + mapRegistry);
+      }
+    }
+  }
+
+  @SuppressWarnings("try")
+  private void runWithActionCache(String[] args, String[] remainingArgs, R8Command.Builder builder)
+      throws CompilationFailedException, IOException {
+    ActionCache cache =
+        new ActionCache(
+            actionCacheDirectory,
+            actionCacheMaxSize,
+            ActionCache.computeActionKey(args, OUTPUT_FLAGS, INPUT_OUTPUT_FLAGS));
+    Map<String, Path> outputs = new TreeMap<>();
+    outputs.put("code", builder.getOutputPath());
+    printOutputs.forEach((flag, path) -> outputs.put(flag.substring(1), path));
+    CompilerArguments arguments =
+        CompilerArguments.split(remainingArgs, R8Command.getParseFlagsInformation());
+    for (String flag :
+        Arrays.asList(
+            "--pg-map-output", "--main-dex-list-output", "--desugared-lib-pg-conf-output")) {
+      String value = arguments.getOptionValue(flag);
+      if (value != null) {
+        outputs.put(flag.substring(2), Paths.get(value));
+      }
+    }
+    if (resourceOutput != null) {
+      outputs.put("resources", resourceOutput);
+    }
+    if (partitionMapOutput != null) {
+      outputs.put("partition-map", partitionMapOutput);
+    }
+    for (int i = 0; i < artProfiles.size(); i++) {
+      outputs.put("art-profile-" + i, artProfiles.get(i).getOutput());
+    }
+    List<Path> dependencies;
+    try (TraceProfile.Phase phase = profile.begin("action cache lookup")) {
+      dependencies = cache.restore(outputs);
+    }
+    if (dependencies != null) {
+      if (depsFileWriter != null) {
+        for (Path dependency : dependencies) {
+          depsFileWriter.accept(Origin.unknown(), dependency);
+        }
+        depsFileWriter.finished();
+      }
+      restoredFromCache = true;
+      diagnosticsHandler.info("Restored all outputs from the action cache.");
+      return;
+    }
+    builder.setInputDependencyGraphConsumer(cache.recordDependencies(depsFileWriter));
+    compile(builder);
+    try (TraceProfile.Phase phase = profile.begin("action cache store")) {
+      cache.store(outputs);
+    }
+  }
+
+  @SuppressWarnings("try")
+  private void compile(R8Command.Builder builder) throws CompilationFailedException {
+    // Time spent waiting for compilations with other compiler properties is not part of the phase.
+    properties.runWith(
+        () -> {
+          try (TraceProfile.Phase phase = profile.begin("R8.run")) {
+            R8.run(builder.build());
+          }
+        });
+    for (ArtProfileRewriting artProfile : artProfiles) {
+      diagnosticsHandler.info(artProfile.getReport());
+    }
+  }
+
+  private static Path getDepsFileTarget(R8Command.Builder builder) {
+    Path codeOutput = builder.getOutputPath();
+    return Files.isDirectory(codeOutput) ? codeOutput.resolve("classes.dex") : codeOutput;
+  }
+
+  private final PrintStream output;
+  private final boolean workerMode;
+  private final CompilerProperties properties = new CompilerProperties();
+  private final TraceProfile profile = new TraceProfile("r8");
+  private Path profileOutput = null;
+  private final MetricsLog metrics = new MetricsLog("r8");
+  private Path metricsLog = null;
+  private Path mapRegistry = null;
+  private Path partitionMapOutput = null;
+  private final List<StartupProfile> startupProfiles = new ArrayList<>();
+  private final List<ArtProfileRewriting> artProfiles = new ArrayList<>();
+  private boolean dexContainer = false;
+  private boolean gzipPrintOutputs = false;
+  private Path dexContainerReport = null;
   private WrapperDiagnosticsHandler diagnosticsHandler = new WrapperDiagnosticsHandler();
+  private Path diagnosticsReport = null;
+  private boolean restoredFromCache = false;
   private boolean ignoreLibraryExtendsProgram = false;
   private boolean useCompatPg = false;
   private Path depsOutput = null;
+  private DepsFileWriter depsFileWriter = null;
+  private Path actionCacheDirectory = null;
+  private long actionCacheMaxSize = DEFAULT_ACTION_CACHE_MAX_SIZE;
+  private boolean preserveUnchangedOutputs = false;
+  private final Map<String, Path> printOutputs = new TreeMap<>();
   private Path resourceInput = null;
   private Path resourceOutput = null;
+  private RawCopyResourceConsumer resourceConsumer = null;
   private final List<String> pgRules = new ArrayList<>();
   private boolean printInfoDiagnostics = false;
   private boolean dontOptimize = false;
@@ -154,6 +538,14 @@ public class R8Wrapper {
   private boolean protectApiSurface = false;
   private boolean storeStoreFenceConstructorInlining = false;
   private final List<String> excludeClasses = new ArrayList<>();
+  private final List<Path> libraryArchives = new ArrayList<>();
+  private final List<ClassFileArchiveIndex> libraryIndices = new ArrayList<>();
+  private final List<GzipFiles.GzipStringConsumer> gzipConsumers = new ArrayList<>();
+
+  private R8Wrapper(PrintStream output, boolean workerMode) {
+    this.output = output;
+    this.workerMode = workerMode;
+  }
 
   private String[] parseWrapperArguments(String[] args) throws IOException {
     List<String> remainingArgs = new ArrayList<>();
@@ -173,6 +565,12 @@ public class R8Wrapper {
             }
             break;
           }
+        case "--lib":
+          {
+            String nextArg = args[++i];
+            libraryArchives.add(Paths.get(nextArg));
+            break;
+          }
         case "--ignore-library-extends-program":
           {
             ignoreLibraryExtendsProgram = true;
@@ -227,6 +625,95 @@ public class R8Wrapper {
             depsOutput = Paths.get(nextArg);
             break;
           }
+        case TraceProfile.PROFILE_OUTPUT_FLAG:
+          {
+            String nextArg = args[++i];
+            profileOutput = Paths.get(nextArg);
+            break;
+          }
+        case MetricsLog.METRICS_LOG_FLAG:
+          {
+            String nextArg = args[++i];
+            metricsLog = Paths.get(nextArg);
+            break;
+          }
+        case WrapperDiagnosticsHandler.DIAGNOSTICS_REPORT_FLAG:
+          {
+            String nextArg = args[++i];
+            diagnosticsReport = Paths.get(nextArg);
+            diagnosticsHandler.setReport(diagnosticsReport);
+            break;
+          }
+        case WrapperDiagnosticsHandler.DIAGNOSTICS_LIMIT_FLAG:
+          {
+            String nextArg = args[++i];
+            diagnosticsHandler.setLimit(Integer.parseInt(nextArg));
+            break;
+          }
+        case DiagnosticsRules.DIAGNOSTICS_RULES_FLAG:
+          {
+            String nextArg = args[++i];
+            diagnosticsHandler.addRules(Paths.get(nextArg));
+            break;
+          }
+        case GzipFiles.GZIP_PRINT_OUTPUTS_FLAG:
+          {
+            gzipPrintOutputs = true;
+            break;
+          }
+        case DexContainer.DEX_CONTAINER_FLAG:
+          {
+            dexContainer = true;
+            break;
+          }
+        case DexContainer.DEX_CONTAINER_REPORT_FLAG:
+          {
+            String nextArg = args[++i];
+            dexContainerReport = Paths.get(nextArg);
+            break;
+          }
+        case ArtProfileRewriting.ART_PROFILE_FLAG:
+          {
+            Path input = Paths.get(args[++i]);
+            Path output = Paths.get(args[++i]);
+            artProfiles.add(new ArtProfileRewriting(input, output));
+            break;
+          }
+        case StartupProfile.STARTUP_PROFILE_FLAG:
+          {
+            String nextArg = args[++i];
+            startupProfiles.add(new StartupProfile(Paths.get(nextArg)));
+            break;
+          }
+        case MapRegistry.MAP_REGISTRY_FLAG:
+          {
+            String nextArg = args[++i];
+            mapRegistry = Paths.get(nextArg);
+            break;
+          }
+        case PartitionMapArchive.PARTITION_MAP_OUTPUT_FLAG:
+          {
+            String nextArg = args[++i];
+            partitionMapOutput = Paths.get(nextArg);
+            break;
+          }
+        case UnchangedOutputs.PRESERVE_UNCHANGED_OUTPUTS_FLAG:
+          {
+            preserveUnchangedOutputs = true;
+            break;
+          }
+        case "--action-cache":
+          {
+            String nextArg = args[++i];
+            actionCacheDirectory = Paths.get(nextArg);
+            break;
+          }
+        case "--action-cache-max-size":
+          {
+            String nextArg = args[++i];
+            actionCacheMaxSize = Long.parseLong(nextArg);
+            break;
+          }
           // Remove uses of this same as for D8 (b/69377755).
         case "--multi-dex":
           {
@@ -261,7 +748,11 @@ public class R8Wrapper {
         case "-printusage":
         case "-printseeds":
           {
-            pgRules.add(arg + " " + args[++i]);
+            String nextArg = args[++i];
+            if (arg.startsWith("-print")) {
+              printOutputs.put(arg, Paths.get(nextArg));
+            }
+            pgRules.add(arg + " " + nextArg);
             break;
           }
         case "--protect-api-surface":
@@ -281,11 +772,25 @@ public class R8Wrapper {
           }
       }
     }
+    // In worker mode library archives are indexed once and shared by all compilations. Libraries
+    // are only taken from the compiler if all are archives, so their order is kept.
+    if (!workerMode || !libraryArchives.stream().allMatch(Files::isRegularFile)) {
+      for (Path path : libraryArchives) {
+        remainingArgs.add("--lib");
+        remainingArgs.add(path.toString());
+      }
+      libraryArchives.clear();
+    }
     return remainingArgs.toArray(new String[0]);
   }
 
-  private void applyWrapperArguments(R8Command.Builder builder) {
+  private void applyWrapperArguments(R8Command.Builder builder) throws IOException {
     diagnosticsHandler.setPrintInfoDiagnostics(printInfoDiagnostics);
+    for (Path path : libraryArchives) {
+      ClassFileArchiveIndex index = ClassFileArchiveIndex.acquire(path);
+      libraryIndices.add(index);
+      builder.addLibraryResourceProvider(index);
+    }
     // Surface duplicate type warnings for optimized targets where duplicates are more dangerous.
     // TODO(b/222468116): Bump the level to ERROR for all optimized targets after resolving current
     // duplicates, and the default level to WARNING.
@@ -293,15 +798,29 @@ public class R8Wrapper {
       diagnosticsHandler.setDuplicateTypesDiagnosticsLevel(DiagnosticsLevel.WARNING);
     }
     if (depsOutput != null) {
-      Path codeOutput = builder.getOutputPath();
-      Path target = Files.isDirectory(codeOutput) ? codeOutput.resolve("classes.dex") : codeOutput;
-      builder.setInputDependencyGraphConsumer(new DepsFileWriter(target, depsOutput.toString()));
+      depsFileWriter = new DepsFileWriter(getDepsFileTarget(builder), depsOutput.toString());
+      builder.setInputDependencyGraphConsumer(depsFileWriter);
+      for (StartupProfile startupProfile : startupProfiles) {
+        depsFileWriter.accept(CLI_ORIGIN, startupProfile.getPath());
+      }
+      for (ArtProfileRewriting artProfile : artProfiles) {
+        depsFileWriter.accept(CLI_ORIGIN, artProfile.getInput());
+      }
+    }
+    for (StartupProfile startupProfile : startupProfiles) {
+      builder.addStartupProfileProviders(startupProfile);
+    }
+    for (ArtProfileRewriting artProfile : artProfiles) {
+      builder.addArtProfileForRewriting(artProfile, artProfile);
+    }
+    if (partitionMapOutput != null) {
+      builder.setPartitionMapConsumer(PartitionMapArchive.writer(partitionMapOutput));
     }
     if (resourceInput != null && resourceOutput != null) {
       builder.setAndroidResourceProvider(new AOSPResourceProvider(resourceInput,
           new PathOrigin(resourceInput)));
-      builder.setAndroidResourceConsumer(
-          new ArchiveProtoAndroidResourceConsumer(resourceOutput, resourceInput));
+      resourceConsumer = new RawCopyResourceConsumer(resourceOutput, resourceInput);
+      builder.setAndroidResourceConsumer(resourceConsumer);
       if (optimizingResourceShrinking) {
         builder.setResourceShrinkerConfiguration(b -> b.enableOptimizedShrinkingWithR8().build());
         if (!forceOptimizingResourceShrinking) {
@@ -314,9 +833,8 @@ public class R8Wrapper {
     } else if (resourceOutput != null || resourceInput != null) {
       throw new RuntimeException("Both --resource-input and --resource-output must be specified");
     }
-    if (ignoreLibraryExtendsProgram) {
-      System.setProperty("com.android.tools.r8.allowLibraryExtendsProgramInFullMode", "1");
-    }
+    properties.set(
+        "com.android.tools.r8.allowLibraryExtendsProgramInFullMode", ignoreLibraryExtendsProgram);
     if (keepRuntimeInvisibleAnnotations) {
       builder.addProguardConfiguration(
           List.of(
@@ -330,6 +848,30 @@ public class R8Wrapper {
       String excludePatterns = String.join(",", excludeClasses);
       builder.enableExperimentalPartialShrinking(includePatterns, excludePatterns);
     }
+    if (gzipPrintOutputs) {
+      // Stream the outputs through compressing consumers instead of having R8 write them.
+      for (Map.Entry<String, Path> entry : printOutputs.entrySet()) {
+        pgRules.remove(entry.getKey() + " " + entry.getValue());
+        GzipFiles.GzipStringConsumer consumer = GzipFiles.stringConsumer(entry.getValue());
+        gzipConsumers.add(consumer);
+        switch (entry.getKey()) {
+          case "-printmapping":
+            builder.setProguardMapConsumer(consumer);
+            break;
+          case "-printusage":
+            builder.setProguardUsageConsumer(consumer);
+            break;
+          case "-printseeds":
+            builder.setProguardSeedsConsumer(consumer);
+            break;
+          case "-printconfiguration":
+            builder.setProguardConfigurationConsumer(consumer);
+            break;
+          default:
+            throw new RuntimeException("Unexpected print output " + entry.getKey());
+        }
+      }
+    }
     if (!pgRules.isEmpty()) {
       builder.addProguardConfiguration(pgRules, CLI_ORIGIN);
     }
@@ -339,17 +881,17 @@ public class R8Wrapper {
     if (useCompatPg) {
       builder.setProguardCompatibility(useCompatPg);
     }
-    if (storeStoreFenceConstructorInlining) {
-      System.setProperty("com.android.tools.r8.enableConstructorInliningWithFinalFields", "1");
-    }
+    properties.set(
+        "com.android.tools.r8.enableConstructorInliningWithFinalFields",
+        storeStoreFenceConstructorInlining);
+    properties.set(DexContainer.DEX_CONTAINER_PROPERTY, dexContainer);
   }
 
   /** Utility method to apply platform specific settings to both D8 and R8. */
-  public static void applyCommonCompilerArguments(BaseCompilerCommand.Builder<?, ?> builder) {
+  public static void applyCommonCompilerArguments(
+      BaseCompilerCommand.Builder<?, ?> builder, CompilerProperties properties) {
     // TODO(b/232073181): Remove this once platform flag is the default.
-    if (!builder.getAndroidPlatformBuild()) {
-      System.setProperty("com.android.tools.r8.disableApiModeling", "1");
-    }
+    properties.set("com.android.tools.r8.disableApiModeling", !builder.getAndroidPlatformBuild());
   }
 
   private static class AOSPResourceProvider extends ArchiveProtoAndroidResourceProvider {
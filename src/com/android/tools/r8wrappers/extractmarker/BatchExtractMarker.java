@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.extractmarker;
+
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.ExtractMarker;
+import com.android.tools.r8.ExtractMarkerCommand;
+import com.android.tools.r8.MarkerInfo;
+import com.android.tools.r8.MarkerInfoConsumer;
+import com.android.tools.r8.MarkerInfoConsumerData;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8wrappers.utils.Json;
+import com.android.tools.r8wrappers.utils.ZipArchive;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts the compiler markers of all dex code below directories and in archives, in one process.
+ *
+ * <p>Dex entries are selected on the central directory of memory-mapped archives and each dex file
+ * is checked for a dex header before its markers are extracted. Files are processed in parallel and
+ * reported sorted by path, followed by a summary per tool.
+ */
+public class BatchExtractMarker {
+
+  private static final String USAGE =
+      String.join(
+          System.lineSeparator(),
+          "Usage: extractmarker --batch [<option>]* <path>+",
+          "where <path> is a dex file, an archive (zip, jar, apk, apex) or a directory to search",
+          "for them, and <option>s are:",
+          "  --json                      # Print JSON lines instead of text.",
+          "  --output <file>             # Write the report to <file> (default stdout).",
+          "  --threads <n>               # Number of files to process in parallel.",
+          "  -h, --help                  # Print this message.");
+
+  private static final byte[] DEX_MAGIC_PREFIX = {'d', 'e', 'x', '\n'};
+
+  /** The markers of a single dex file, which may be an archive entry. */
+  private static class Result {
+    final String path;
+    final String entry;
+    final String dexVersion;
+    final List<MarkerInfo> markers;
+    final String error;
+
+    Result(String path, String entry, String dexVersion, List<MarkerInfo> markers, String error) {
+      this.path = path;
+      this.entry = entry;
+      this.dexVersion = dexVersion;
+      this.markers = markers;
+      this.error = error;
+    }
+
+    String getLocation() {
+      return entry == null ? path : path + "!" + entry;
+    }
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    boolean json = false;
+    Path output = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<Path> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-h":
+        case "--help":
+          System.out.println(USAGE);
+          return;
+        case "--batch":
+          break;
+        case "--json":
+          json = true;
+          break;
+        case "--output":
+          output = Paths.get(args[++i]);
+          break;
+        case "--threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        default:
+          paths.add(Paths.get(arg));
+          break;
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+    List<Path> files = new ArrayList<>();
+    for (Path path : paths) {
+      collectFiles(path, files);
+    }
+    List<Result> results = extract(files, threads);
+    results.sort(Comparator.comparing(Result::getLocation));
+    try (PrintWriter writer =
+        new PrintWriter(
+            new BufferedWriter(
+                output == null
+                    ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                    : Files.newBufferedWriter(output)))) {
+      if (json) {
+        printJson(results, writer);
+      } else {
+        printText(results, writer);
+      }
+    }
+  }
+
+  private static void collectFiles(Path path, List<Path> files) throws IOException {
+    if (!Files.isDirectory(path)) {
+      files.add(path);
+      return;
+    }
+    try (Stream<Path> stream = Files.walk(path)) {
+      files.addAll(
+          stream
+              .filter(file -> Files.isRegularFile(file) && (isDex(file) || isArchive(file)))
+              .collect(Collectors.toList()));
+    }
+  }
+
+  private static boolean isDex(Path file) {
+    return file.getFileName().toString().endsWith(".dex");
+  }
+
+  private static boolean isArchive(Path file) {
+    String name = file.getFileName().toString();
+    return name.endsWith(".zip")
+        || name.endsWith(".jar")
+        || name.endsWith(".apk")
+        || name.endsWith(".apex");
+  }
+
+  private static List<Result> extract(List<Path> files, int threads)
+      throws InterruptedException, IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      List<Future<List<Result>>> futures = new ArrayList<>(files.size());
+      for (Path file : files) {
+        futures.add(executor.submit(() -> extract(file)));
+      }
+      List<Result> results = new ArrayList<>();
+      for (Future<List<Result>> future : futures) {
+        try {
+          results.addAll(future.get());
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static List<Result> extract(Path file) {
+    List<Result> results = new ArrayList<>();
+    try {
+      if (isDex(file) || !isArchive(file)) {
+        results.add(extract(file.toString(), null, Files.readAllBytes(file), new PathOrigin(file)));
+        return results;
+      }
+      ZipArchive archive = ZipArchive.open(file);
+      for (ZipArchive.Entry entry : archive.getEntries()) {
+        if (entry.getName().endsWith(".dex")) {
+          results.add(
+              extract(
+                  file.toString(), entry.getName(), archive.read(entry), new PathOrigin(file)));
+        }
+      }
+    } catch (IOException e) {
+      results.add(new Result(file.toString(), null, null, List.of(), e.getMessage()));
+    }
+    return results;
+  }
+
+  private static Result extract(String path, String entry, byte[] data, Origin origin) {
+    String dexVersion = getDexVersion(data);
+    if (dexVersion == null) {
+      return new Result(path, entry, null, List.of(), "not a dex file");
+    }
+    List<MarkerInfo> markers = new ArrayList<>();
+    try {
+      ExtractMarker.run(
+          ExtractMarkerCommand.builder()
+              .addDexProgramData(data, origin)
+              .setMarkerInfoConsumer(
+                  new MarkerInfoConsumer() {
+                    @Override
+                    public void acceptMarkerInfo(MarkerInfoConsumerData info) {
+                      if (info.hasMarkers()) {
+                        markers.addAll(info.getMarkers());
+                      }
+                    }
+
+                    @Override
+                    public void finished() {}
+                  })
+              .build());
+    } catch (CompilationFailedException e) {
+      return new Result(path, entry, dexVersion, List.of(), String.valueOf(e.getMessage()));
+    }
+    return new Result(path, entry, dexVersion, markers, null);
+  }
+
+  /** Returns the version of the dex header, e.g., "039", or null if {@code data} is not dex. */
+  private static String getDexVersion(byte[] data) {
+    if (data.length < 8) {
+      return null;
+    }
+    for (int i = 0; i < DEX_MAGIC_PREFIX.length; i++) {
+      if (data[i] != DEX_MAGIC_PREFIX[i]) {
+        return null;
+      }
+    }
+    return new String(data, 4, 3, StandardCharsets.US_ASCII);
+  }
+
+  private static void printText(List<Result> results, PrintWriter writer) {
+    Map<String, Integer> summary = new TreeMap<>();
+    for (Result result : results) {
+      String prefix = result.getLocation() + " (dex " + result.dexVersion + "): ";
+      if (result.error != null) {
+        writer.println(result.getLocation() + ": error: " + result.error);
+        summary.merge("error", 1, Integer::sum);
+      } else if (result.markers.isEmpty()) {
+        writer.println(prefix + "no marker");
+        summary.merge("no marker", 1, Integer::sum);
+      } else {
+        for (MarkerInfo marker : result.markers) {
+          writer.println(prefix + marker.getRawEncoding());
+          summary.merge(marker.getTool(), 1, Integer::sum);
+        }
+      }
+    }
+    writer.println();
+    writer.println("Summary of " + results.size() + " dex files:");
+    summary.forEach((key, count) -> writer.println("  " + key + ": " + count));
+  }
+
+  private static void printJson(List<Result> results, PrintWriter writer) {
+    for (Result result : results) {
+      StringBuilder builder = new StringBuilder("{\"path\":").append(Json.quote(result.path));
+      if (result.entry != null) {
+        builder.append(",\"entry\":").append(Json.quote(result.entry));
+      }
+      if (result.dexVersion != null) {
+        builder.append(",\"dexVersion\":").append(Json.quote(result.dexVersion));
+      }
+      if (result.error != null) {
+        builder.append(",\"error\":").append(Json.quote(result.error));
+      }
+      builder.append(",\"markers\":[");
+      for (int i = 0; i < result.markers.size(); i++) {
+        MarkerInfo marker = result.markers.get(i);
+        builder
+            .append(i == 0 ? "" : ",")
+            .append("{\"tool\":")
+            .append(Json.quote(marker.getTool()))
+            .append(",\"minApi\":")
+            .append(marker.getMinApi())
+            .append(",\"raw\":")
+            .append(Json.quote(marker.getRawEncoding()))
+            .append("}");
+      }
+      writer.println(builder.append("]}"));
+    }
+  }
+}
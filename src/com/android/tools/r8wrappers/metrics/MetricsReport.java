@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.metrics;
+
+import com.android.tools.r8wrappers.utils.Json;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Aggregates the records written by the wrappers' --metrics-log into a ranked report. */
+public class MetricsReport {
+
+  private static final String USAGE =
+      String.join(
+          System.lineSeparator(),
+          "Usage: r8-metrics-report [<option>]* <metrics-log>+",
+          "where <option>s are:",
+          "  --top <n>                   # Number of targets to list (default 20).",
+          "  --sort <metric>             # Metric to rank targets by: wallMs (default), cpuMs,",
+          "                              # gcMs, peakHeapBytes, inputBytes or outputBytes.",
+          "  -h, --help                  # Print this message.");
+
+  private static final List<String> METRICS =
+      List.of("wallMs", "cpuMs", "gcMs", "peakHeapBytes", "inputBytes", "outputBytes");
+
+  private static class Record {
+    final String tool;
+    final String output;
+    final boolean success;
+    final Map<String, Long> metrics = new TreeMap<>();
+
+    Record(Map<?, ?> json) {
+      this.tool = String.valueOf(json.get("tool"));
+      this.output = String.valueOf(json.get("output"));
+      this.success = Boolean.TRUE.equals(json.get("success"));
+      for (String metric : METRICS) {
+        Object value = json.get(metric);
+        metrics.put(metric, value instanceof Number ? ((Number) value).longValue() : 0L);
+      }
+    }
+
+    long get(String metric) {
+      return metrics.get(metric);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int top = 20;
+    String sort = "wallMs";
+    List<Path> logs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-h":
+        case "--help":
+          System.out.println(USAGE);
+          return;
+        case "--top":
+          top = Integer.parseInt(args[++i]);
+          break;
+        case "--sort":
+          sort = args[++i];
+          if (!METRICS.contains(sort)) {
+            throw new RuntimeException("Unknown metric: " + sort);
+          }
+          break;
+        default:
+          logs.add(Paths.get(arg));
+          break;
+      }
+    }
+    if (logs.isEmpty()) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+    List<Record> records = new ArrayList<>();
+    for (Path log : logs) {
+      readRecords(log, records);
+    }
+    printReport(records, top, sort);
+  }
+
+  private static void readRecords(Path log, List<Record> records) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(log)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        Object json;
+        try {
+          json = Json.parse(line);
+        } catch (RuntimeException e) {
+          // A partially written record, e.g., from a killed action.
+          continue;
+        }
+        if (json instanceof Map) {
+          records.add(new Record((Map<?, ?>) json));
+        }
+      }
+    }
+  }
+
+  private static void printReport(List<Record> records, int top, String sort) {
+    Map<String, List<Record>> byTool = new TreeMap<>();
+    int failures = 0;
+    for (Record record : records) {
+      byTool.computeIfAbsent(record.tool, k -> new ArrayList<>()).add(record);
+      if (!record.success) {
+        failures++;
+      }
+    }
+    System.out.println(records.size() + " invocations, " + failures + " failed");
+    for (Map.Entry<String, List<Record>> entry : byTool.entrySet()) {
+      List<Record> toolRecords = entry.getValue();
+      System.out.println();
+      System.out.println(entry.getKey() + " (" + toolRecords.size() + " invocations)");
+      System.out.println(
+          String.format(
+              "  %-14s %14s %12s %12s %12s %12s",
+              "metric", "total", "p50", "p90", "p99", "max"));
+      for (String metric : METRICS) {
+        long[] values = toolRecords.stream().mapToLong(r -> r.get(metric)).sorted().toArray();
+        long total = 0;
+        for (long value : values) {
+          total += value;
+        }
+        System.out.println(
+            String.format(
+                "  %-14s %14d %12d %12d %12d %12d",
+                metric,
+                total,
+                percentile(values, 50),
+                percentile(values, 90),
+                percentile(values, 99),
+                values[values.length - 1]));
+      }
+    }
+    List<Record> ranked = new ArrayList<>(records);
+    String metric = sort;
+    ranked.sort(Comparator.comparingLong((Record r) -> r.get(metric)).reversed());
+    System.out.println();
+    System.out.println("Top " + Math.min(top, ranked.size()) + " targets by " + sort);
+    for (int i = 0; i < top && i < ranked.size(); i++) {
+      Record record = ranked.get(i);
+      System.out.println(
+          String.format(
+              "  %14d  %-3s %s%s",
+              record.get(sort),
+              record.tool,
+              record.output,
+              record.success ? "" : " (failed)"));
+    }
+  }
+
+  /** Nearest-rank percentile of sorted {@code values}. */
+  private static long percentile(long[] values, int percent) {
+    int rank = (int) Math.ceil(percent / 100.0 * values.length);
+    return values[Math.max(0, rank - 1)];
+  }
+}
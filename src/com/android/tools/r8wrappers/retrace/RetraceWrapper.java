@@ -20,15 +20,20 @@ import com.android.tools.r8.Diagnostic;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.references.ClassReference;
 import com.android.tools.r8.references.Reference;
+import com.android.tools.r8.retrace.PartitionMappingSupplier;
 import com.android.tools.r8.retrace.ProguardMapProducer;
 import com.android.tools.r8.retrace.RetraceStackTraceContext;
 import com.android.tools.r8.retrace.RetracedClassReference;
 import com.android.tools.r8.retrace.RetracedMethodReference;
 import com.android.tools.r8.retrace.Retracer;
+import com.android.tools.r8wrappers.utils.GzipFiles;
+import com.android.tools.r8wrappers.utils.MapRegistry;
+import com.android.tools.r8wrappers.utils.PartitionMapArchive;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.net.URISyntaxException;
 import java.nio.file.FileVisitResult;
@@ -69,13 +74,16 @@ public class RetraceWrapper {
           "                              # build number)",
           "or for controlling map lookup/location <option>s are:",
           "  --default-map <file/app>    # Default map to retrace lines that don't auto-identify.",
-          "                              # The argument can be a local file or it can be any",
+          "                              # The argument can be a local file, a .zip written by",
+          "                              # r8 --partition-map-output or it can be any",
           "                              # unique substring of a map path found in the map-table.",
           "  --map-search-path <path>    # Path to search for mappings that support auto-identify.",
           "                              # Separate <path> entries by colon ':'.",
           "                              # Default '"
               + String.join(":", AOSP_MAP_SEARCH_PATHS)
               + "'.",
+          "  --map-registry <file>       # Registry of mappings written by r8 --map-registry.",
+          "                              # Replaces the search of --map-search-path.",
           "other supported <option>s are:",
           "  --print-map-table           # Print the table of identified mapping files and exit.",
           "  --cwd-relative-search-paths # When this flag is set, the search paths given in",
@@ -104,9 +112,12 @@ public class RetraceWrapper {
     }
   }
 
-  private interface LazyRetracer {
+  interface LazyRetracer {
     String getMapLocation();
 
+    /** Called with the classes of a stack trace before getting the retracer for it. */
+    default void registerClassUse(ClassReference clazz) throws Exception {}
+
     Retracer getRetracer(Path tempDir) throws Exception;
   }
 
@@ -131,12 +142,60 @@ public class RetraceWrapper {
       if (lazyRetracer == null) {
         lazyRetracer =
             Retracer.createDefault(
-                ProguardMapProducer.fromPath(mapPath), new ForwardingDiagnosticsHander());
+                getMapProducer(mapPath), new ForwardingDiagnosticsHander());
       }
       return lazyRetracer;
     }
   }
 
+  /** Retracer for a map written by r8 --partition-map-output, which loads classes on demand. */
+  private static class PartitionedLazyRetracer implements LazyRetracer {
+    final MapInfo mapInfo;
+    final Path archivePath;
+
+    private PartitionMappingSupplier lazyMappingSupplier = null;
+
+    public PartitionedLazyRetracer(MapInfo mapInfo, Path archivePath) {
+      this.mapInfo = mapInfo;
+      this.archivePath = archivePath;
+    }
+
+    @Override
+    public String getMapLocation() {
+      return archivePath.toString();
+    }
+
+    private PartitionMappingSupplier getMappingSupplier() throws IOException {
+      if (lazyMappingSupplier == null) {
+        PartitionMapArchive archive = PartitionMapArchive.open(archivePath);
+        lazyMappingSupplier =
+            PartitionMappingSupplier.builder()
+                .setMetadata(archive.getMetadata())
+                .setMappingPartitionFromKeySupplier(
+                    key -> {
+                      try {
+                        return archive.getPartition(key);
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                    })
+                .build();
+      }
+      return lazyMappingSupplier;
+    }
+
+    @Override
+    public void registerClassUse(ClassReference clazz) throws IOException {
+      getMappingSupplier().registerClassUse(new ForwardingDiagnosticsHander(), clazz);
+    }
+
+    @Override
+    public Retracer getRetracer(Path tempDir) throws IOException {
+      // The retracer covers the partitions of all classes registered so far.
+      return getMappingSupplier().createRetracer(new ForwardingDiagnosticsHander());
+    }
+  }
+
   private static class RemoteLazyRetracer implements LazyRetracer {
 
     private final MapInfo mapInfo;
@@ -165,7 +224,7 @@ public class RetraceWrapper {
         Path mapFile = fetchArtifact(buildInfo, mappingFile, zipEntry, tempDir);
         lazyRetracer =
             Retracer.createDefault(
-                ProguardMapProducer.fromPath(mapFile), new ForwardingDiagnosticsHander());
+                getMapProducer(mapFile), new ForwardingDiagnosticsHander());
       }
       return lazyRetracer;
     }
@@ -196,7 +255,7 @@ public class RetraceWrapper {
     }
   }
 
-  private static class MapInfo {
+  static class MapInfo {
     final String id;
     final String hash;
 
@@ -327,7 +386,7 @@ public class RetraceWrapper {
   private static final String MAP_HASH_HEADER_MARKER = "# pg_map_hash: SHA-256 ";
 
   /** Map of cached/lazy retracer instances for maps found in the local AOSP build. */
-  private static final Map<String, LazyRetracer> RETRACERS = new HashMap<>();
+  static final Map<String, LazyRetracer> RETRACERS = new HashMap<>();
 
   private static final List<String> PENDING_MESSAGES = new ArrayList<>();
 
@@ -348,10 +407,17 @@ public class RetraceWrapper {
     throw new RuntimeException(message);
   }
 
-  private static MapInfo readMapHeaderInfo(Path path) throws IOException {
+  /** Returns the producer of the map in {@code path}, which may be gzip compressed. */
+  private static ProguardMapProducer getMapProducer(Path path) throws IOException {
+    return GzipFiles.isGzip(path)
+        ? () -> GzipFiles.newInputStream(path)
+        : ProguardMapProducer.fromPath(path);
+  }
+
+  static MapInfo readMapHeaderInfo(Path path) throws IOException {
     String mapId = null;
     String mapHash = null;
-    try (BufferedReader reader = Files.newBufferedReader(path)) {
+    try (BufferedReader reader = GzipFiles.newBufferedReader(path)) {
       while (true) {
         String line = reader.readLine();
         if (line == null || !line.startsWith("#")) {
@@ -594,6 +660,12 @@ public class RetraceWrapper {
       printIdentityStackTrace(exceptionLine, frames);
       return;
     }
+    if (exceptionLine != null) {
+      lazyRetracer.registerClassUse(exceptionLine.exception);
+    }
+    for (FrameLine frame : frames) {
+      lazyRetracer.registerClassUse(frame.clazz);
+    }
     Retracer retracer = lazyRetracer.getRetracer(tempDir);
     List<ResultNode> finalResultNodes = new ArrayList<>();
     retraceOptionalExceptionLine(
@@ -703,8 +775,22 @@ public class RetraceWrapper {
             });
   }
 
-  private static void populateLocalMappingFileMap(
-      List<String> searchPaths, boolean cwdRelativeSearchPaths) throws Exception {
+  static void populateLocalMappingFileMap(
+      List<String> searchPaths, boolean cwdRelativeSearchPaths, Path mapRegistry)
+      throws Exception {
+    if (mapRegistry != null) {
+      if (Files.notExists(mapRegistry)) {
+        error("Map registry does not exist: " + mapRegistry);
+      }
+      for (MapRegistry.Entry entry : MapRegistry.read(mapRegistry)) {
+        MapInfo mapInfo = new MapInfo(entry.getId(), entry.getHash());
+        RETRACERS.put(
+            entry.getId(),
+            entry.getPartitionMap() != null
+                ? new PartitionedLazyRetracer(mapInfo, entry.getPartitionMap())
+                : new LocalLazyRetracer(mapInfo, entry.getPath()));
+      }
+    }
     Path projectRoot = getProjectRoot();
     if (projectRoot == null) {
       return;
@@ -717,6 +803,10 @@ public class RetraceWrapper {
       RETRACERS.put(
           prebuiltR8MapInfo.id, new LocalLazyRetracer(prebuiltR8MapInfo, prebuiltR8MapPath));
     }
+    if (mapRegistry != null) {
+      // The registry has all mapping files of the build, so there is no need to search for them.
+      return;
+    }
     for (String path : searchPaths) {
       Path resolvedPath;
       if (cwdRelativeSearchPaths) {
@@ -732,6 +822,7 @@ public class RetraceWrapper {
           new FileVisitor<Path>() {
 
             final Path mapFileName = Paths.get("proguard_dictionary");
+            final Path compressedMapFileName = Paths.get("proguard_dictionary.gz");
 
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
@@ -741,7 +832,7 @@ public class RetraceWrapper {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                 throws IOException {
-              if (file.endsWith(mapFileName)) {
+              if (file.endsWith(mapFileName) || file.endsWith(compressedMapFileName)) {
                 MapInfo mapInfo = readMapHeaderInfo(file);
                 if (mapInfo != null) {
                   RETRACERS.put(mapInfo.id, new LocalLazyRetracer(mapInfo, file));
@@ -949,6 +1040,7 @@ public class RetraceWrapper {
     boolean printMappingFileTable = false;
     boolean cwdRelativeSearchPaths = false;
     Path userTempDir = null;
+    Path mapRegistry = null;
     List<String> searchPaths = AOSP_MAP_SEARCH_PATHS;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
@@ -986,6 +1078,12 @@ public class RetraceWrapper {
           throw error("No argument given for --map-search-path");
         }
         searchPaths = parseSearchPath(args[i]);
+      } else if (arg.equals("--map-registry")) {
+        i++;
+        if (i == args.length) {
+          throw error("No argument given for --map-registry");
+        }
+        mapRegistry = Paths.get(args[i]);
       } else if (arg.equals("--print-map-table")) {
         printMappingFileTable = true;
       } else if (arg.equals("--cwd-relative-search-paths")) {
@@ -1018,7 +1116,7 @@ public class RetraceWrapper {
       if (buildInfo != null) {
         populateRemoteMappingFileMap(buildInfo, tempDir);
       } else {
-        populateLocalMappingFileMap(searchPaths, cwdRelativeSearchPaths);
+        populateLocalMappingFileMap(searchPaths, cwdRelativeSearchPaths, mapRegistry);
       }
       if (printMappingFileTable) {
         List<String> keys = new ArrayList<>(RETRACERS.keySet());
@@ -1059,7 +1157,9 @@ public class RetraceWrapper {
       return null;
     }
     if (Files.isRegularFile(Paths.get(key))) {
-      return new LocalLazyRetracer(null, Paths.get(key));
+      return key.endsWith(".zip")
+          ? new PartitionedLazyRetracer(null, Paths.get(key))
+          : new LocalLazyRetracer(null, Paths.get(key));
     }
     List<LazyRetracer> matches = new ArrayList<>();
     for (LazyRetracer retracer : RETRACERS.values()) {
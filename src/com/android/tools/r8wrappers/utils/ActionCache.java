@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.InputDependencyGraphConsumer;
+import com.android.tools.r8.Version;
+import com.android.tools.r8.origin.Origin;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local cache of whole compiler actions.
+ *
+ * <p>The action key is the hash of the command line, with output locations left out and the content
+ * of the input files and directories added. The inputs the compiler reports through {@link
+ * InputDependencyGraphConsumer}, such as included configuration files, are only known after a
+ * compilation, so they are recorded in a manifest per action key. An entry is then keyed by the
+ * action key together with the current content of the recorded dependencies.
+ *
+ * <p>Outputs that a compilation does not produce are not stored and are removed on restore, as the
+ * same action does not produce them either.
+ *
+ * <p>Entries are published with an atomic rename and evicted in least recently used order once the
+ * cache exceeds its maximum size.
+ */
+public class ActionCache {
+
+  private static final String DEPENDENCIES_FILE = "dependencies";
+  private static final String OUTPUTS_DIRECTORY = "outputs";
+
+  private final Path directory;
+  private final long maxSize;
+  private final String actionKey;
+  private final Set<Path> dependencies = new TreeSet<>();
+
+  public ActionCache(Path directory, long maxSize, String actionKey) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.actionKey = actionKey;
+  }
+
+  /**
+   * Computes the action key for {@code args}. The values of {@code outputFlags} do not contribute
+   * to the key. Values that are existing files or directories contribute their content in addition
+   * to their path.
+   */
+  public static String computeActionKey(String[] args, Collection<String> outputFlags)
+      throws IOException {
+    return computeActionKey(args, outputFlags, Collections.emptySet());
+  }
+
+  /**
+   * Computes the action key as {@link #computeActionKey(String[], Collection)}, where the flags in
+   * {@code inputOutputFlags} take an input and then an output value, e.g., {@code --art-profile
+   * <input> <output>}.
+   */
+  public static String computeActionKey(
+      String[] args, Collection<String> outputFlags, Collection<String> inputOutputFlags)
+      throws IOException {
+    ContentHash hash = new ContentHash().add(Version.getVersionString());
+    List<String> expanded = CompilerArguments.expandArgumentFiles(args);
+    for (int i = 0; i < expanded.size(); i++) {
+      String arg = expanded.get(i);
+      hash.add(arg);
+      if (outputFlags.contains(arg)) {
+        i++;
+        continue;
+      }
+      if (inputOutputFlags.contains(arg) && i + 1 < expanded.size()) {
+        // Continue with the input value and skip the output value after it.
+        arg = expanded.get(++i);
+        hash.add(arg);
+        i++;
+      }
+      Path path = toPath(arg);
+      if (path != null) {
+        addContent(hash, path);
+      }
+    }
+    return hash.hash();
+  }
+
+  /** Adds the content of a file, or of the files in a directory and their relative paths. */
+  private static void addContent(ContentHash hash, Path path) throws IOException {
+    if (Files.isRegularFile(path)) {
+      hash.addFile(path);
+    } else if (Files.isDirectory(path)) {
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(path)) {
+        files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        hash.add(path.relativize(file).toString()).addFile(file);
+      }
+    }
+  }
+
+  private static Path toPath(String arg) {
+    try {
+      return Paths.get(arg);
+    } catch (InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /** Records the compiler reported dependencies and forwards them to {@code delegate}. */
+  public InputDependencyGraphConsumer recordDependencies(InputDependencyGraphConsumer delegate) {
+    return new InputDependencyGraphConsumer() {
+      @Override
+      public void accept(Origin dependent, Path dependency) {
+        synchronized (dependencies) {
+          dependencies.add(dependency);
+        }
+        if (delegate != null) {
+          delegate.accept(dependent, dependency);
+        }
+      }
+
+      @Override
+      public void finished() {
+        if (delegate != null) {
+          delegate.finished();
+        }
+      }
+    };
+  }
+
+  /**
+   * Restores the named {@code outputs} from the cache. Returns the recorded dependencies on a hit
+   * and null on a miss.
+   */
+  public List<Path> restore(Map<String, Path> outputs) throws IOException {
+    Path entry = findEntry();
+    if (entry == null) {
+      return null;
+    }
+    Path storedOutputs = entry.resolve(OUTPUTS_DIRECTORY);
+    List<Path> recorded = new ArrayList<>();
+    try {
+      for (Map.Entry<String, Path> output : outputs.entrySet()) {
+        Path stored = storedOutputs.resolve(output.getKey());
+        if (Files.exists(stored)) {
+          copy(stored, output.getValue());
+        } else if (Files.exists(output.getValue())) {
+          deleteRecursively(output.getValue());
+        }
+      }
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      for (String line : Files.readAllLines(entry.resolve(DEPENDENCIES_FILE))) {
+        if (!line.isEmpty()) {
+          recorded.add(Paths.get(line));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Evicted concurrently. The compilation will overwrite any partially restored outputs.
+      return null;
+    }
+    return recorded;
+  }
+
+  /** Stores the named {@code outputs} of a successful compilation that exist. */
+  public void store(Map<String, Path> outputs) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (Path dependency : dependencies) {
+      lines.add(dependency.toString());
+    }
+    byte[] manifest = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    String entryKey = computeEntryKey(dependencies);
+    if (entryKey == null) {
+      // A dependency disappeared during the compilation.
+      return;
+    }
+    Path entries = directory.resolve("entries");
+    Files.createDirectories(entries);
+    Path temp = Files.createTempDirectory(entries, entryKey + ".tmp");
+    try {
+      Path storedOutputs = temp.resolve(OUTPUTS_DIRECTORY);
+      Files.createDirectories(storedOutputs);
+      for (Map.Entry<String, Path> output : outputs.entrySet()) {
+        if (Files.exists(output.getValue())) {
+          copy(output.getValue(), storedOutputs.resolve(output.getKey()));
+        }
+      }
+      Files.write(temp.resolve(DEPENDENCIES_FILE), manifest);
+      try {
+        Files.move(temp, entries.resolve(entryKey), StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // Stored concurrently by an identical action.
+      } catch (IOException e) {
+        if (Files.notExists(entries.resolve(entryKey))) {
+          throw e;
+        }
+      }
+    } finally {
+      if (Files.exists(temp)) {
+        deleteRecursively(temp);
+      }
+    }
+    AtomicFiles.write(directory.resolve("manifests").resolve(actionKey), manifest);
+    evict();
+  }
+
+  private Path findEntry() throws IOException {
+    List<Path> recorded = new ArrayList<>();
+    try {
+      for (String line :
+          Files.readAllLines(directory.resolve("manifests").resolve(actionKey))) {
+        if (!line.isEmpty()) {
+          recorded.add(Paths.get(line));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    String entryKey = computeEntryKey(recorded);
+    if (entryKey == null) {
+      return null;
+    }
+    Path entry = directory.resolve("entries").resolve(entryKey);
+    return Files.isDirectory(entry) ? entry : null;
+  }
+
+  private String computeEntryKey(Collection<Path> dependencies) throws IOException {
+    ContentHash hash = new ContentHash().add(actionKey);
+    for (Path dependency : dependencies) {
+      if (Files.notExists(dependency)) {
+        return null;
+      }
+      hash.add(dependency.toString());
+      addContent(hash, dependency);
+    }
+    return hash.hash();
+  }
+
+  private void evict() throws IOException {
+    List<StoredEntry> entries = new ArrayList<>();
+    long totalSize = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve("entries"))) {
+      for (Path path : stream) {
+        try {
+          StoredEntry entry =
+              new StoredEntry(path, size(path), Files.getLastModifiedTime(path).toMillis());
+          entries.add(entry);
+          totalSize += entry.size;
+        } catch (NoSuchFileException | UncheckedIOException e) {
+          // Evicted concurrently.
+        }
+      }
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+    for (StoredEntry entry : entries) {
+      if (totalSize <= maxSize) {
+        break;
+      }
+      try {
+        deleteRecursively(entry.path);
+      } catch (NoSuchFileException | UncheckedIOException e) {
+        // Evicted concurrently.
+      }
+      totalSize -= entry.size;
+    }
+  }
+
+  private static class StoredEntry {
+    final Path path;
+    final long size;
+    final long lastUsed;
+
+    StoredEntry(Path path, long size, long lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private static long size(Path path) throws IOException {
+    try (Stream<Path> files = Files.walk(path)) {
+      return files
+          .filter(Files::isRegularFile)
+          .mapToLong(
+              file -> {
+                try {
+                  return Files.size(file);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              })
+          .sum();
+    }
+  }
+
+  /**
+   * Copies a file or directory tree, replacing existing files. Like the compiler, removes the dex
+   * files of a previous output with more dex files from a target directory.
+   */
+  private static void copy(Path source, Path target) throws IOException {
+    if (!Files.isDirectory(source)) {
+      Path parent = target.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+      return;
+    }
+    try (Stream<Path> files = Files.walk(source)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Path destination = target.resolve(source.relativize(file).toString());
+        if (Files.isDirectory(file)) {
+          Files.createDirectories(destination);
+        } else {
+          Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(target, "classes*.dex")) {
+      for (Path file : stream) {
+        if (Files.notExists(source.resolve(file.getFileName().toString()))) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    try (Stream<Path> files = Files.walk(path)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.UTF8TextInputStream;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8.profile.art.ArtProfileBuilder;
+import com.android.tools.r8.profile.art.ArtProfileClassRuleInfo;
+import com.android.tools.r8.profile.art.ArtProfileConsumer;
+import com.android.tools.r8.profile.art.ArtProfileMethodRuleInfo;
+import com.android.tools.r8.profile.art.ArtProfileProvider;
+import com.android.tools.r8.profile.art.ArtProfileRuleConsumer;
+import com.android.tools.r8.profile.art.ArtProfileRulePredicate;
+import com.android.tools.r8.references.ClassReference;
+import com.android.tools.r8.references.MethodReference;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Rewriting of a human-readable ART profile, e.g., a baseline profile, to the output of R8.
+ *
+ * <p>R8 reads the input profile, and reports the rules of the residual profile for the renamed and
+ * optimized program, which are written to the output in the same format. Both are recorded as text
+ * rules for {@link #getReport}, which counts the distinct rules in and out and those that are
+ * identical in both. The other rules cannot be told apart as rewritten or dropped from the text
+ * alone, e.g., a renamed method is one input rule and a different output rule.
+ */
+public class ArtProfileRewriting implements ArtProfileProvider, ArtProfileConsumer {
+
+  public static final String ART_PROFILE_FLAG = "--art-profile";
+
+  private final Path input;
+  private final Path output;
+  private final Set<String> inputRules = new HashSet<>();
+  private final Set<String> outputRules = new LinkedHashSet<>();
+
+  public ArtProfileRewriting(Path input, Path output) {
+    this.input = input;
+    this.output = output;
+  }
+
+  public Path getInput() {
+    return input;
+  }
+
+  public Path getOutput() {
+    return output;
+  }
+
+  @Override
+  public Origin getOrigin() {
+    return new PathOrigin(input);
+  }
+
+  @Override
+  public void getArtProfile(ArtProfileBuilder builder) {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(input);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read ART profile " + input, e);
+    }
+    builder.addHumanReadableArtProfile(
+        new UTF8TextInputStream(new ByteArrayInputStream(bytes)),
+        parser ->
+            parser.setRulePredicate(
+                new ArtProfileRulePredicate() {
+                  @Override
+                  public boolean testClassRule(
+                      ClassReference classReference, ArtProfileClassRuleInfo info) {
+                    addInputRule(classReference.getDescriptor());
+                    return true;
+                  }
+
+                  @Override
+                  public boolean testMethodRule(
+                      MethodReference methodReference, ArtProfileMethodRuleInfo info) {
+                    addInputRule(getMethodRule(methodReference, info));
+                    return true;
+                  }
+                }));
+  }
+
+  void addInputRule(String rule) {
+    synchronized (inputRules) {
+      inputRules.add(rule);
+    }
+  }
+
+  @Override
+  public ArtProfileRuleConsumer getRuleConsumer() {
+    return new ArtProfileRuleConsumer() {
+      @Override
+      public void acceptClassRule(ClassReference classReference, ArtProfileClassRuleInfo info) {
+        synchronized (outputRules) {
+          outputRules.add(classReference.getDescriptor());
+        }
+      }
+
+      @Override
+      public void acceptMethodRule(MethodReference methodReference, ArtProfileMethodRuleInfo info) {
+        synchronized (outputRules) {
+          outputRules.add(getMethodRule(methodReference, info));
+        }
+      }
+    };
+  }
+
+  @Override
+  public void finished(DiagnosticsHandler handler) {
+    StringBuilder builder = new StringBuilder();
+    synchronized (outputRules) {
+      for (String rule : outputRules) {
+        builder.append(rule).append('\n');
+      }
+    }
+    try {
+      AtomicFiles.write(output, builder.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write ART profile " + output, e);
+    }
+  }
+
+  /** Returns the rule in the human-readable format, e.g., {@code HSPLa/b;->c(I)V}. */
+  private static String getMethodRule(
+      MethodReference methodReference, ArtProfileMethodRuleInfo info) {
+    StringBuilder builder = new StringBuilder();
+    if (info.isHot()) {
+      builder.append('H');
+    }
+    if (info.isStartup()) {
+      builder.append('S');
+    }
+    if (info.isPostStartup()) {
+      builder.append('P');
+    }
+    return builder
+        .append(methodReference.getHolderClass().getDescriptor())
+        .append("->")
+        .append(methodReference.getMethodName())
+        .append(methodReference.getMethodDescriptor())
+        .toString();
+  }
+
+  /** Returns the number of distinct rules read and written, and of those identical in both. */
+  public String getReport() {
+    int identical = 0;
+    synchronized (inputRules) {
+      synchronized (outputRules) {
+        for (String rule : outputRules) {
+          if (inputRules.contains(rule)) {
+            identical++;
+          }
+        }
+        return "ART profile "
+            + input
+            + " -> "
+            + output
+            + ": "
+            + inputRules.size()
+            + " rules in, "
+            + outputRules.size()
+            + " out, "
+            + identical
+            + " identical.";
+      }
+    }
+  }
+}
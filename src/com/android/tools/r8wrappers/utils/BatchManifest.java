@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the independent compilations listed in a manifest in one JVM.
+ *
+ * <p>The manifest is a sequence of JSON objects, one per job, of the form {@code {"arguments":
+ * [...], "diagnostics": "<file>"}}. The arguments are those of a separate invocation. The output of
+ * a job, including a stack trace if it throws, is written to its diagnostics file, or to stdout
+ * when there is none. Other arguments of the batch, e.g., {@code --thread-count} or {@code
+ * --metrics-log} added by the launcher, are passed to each job before its own arguments. Jobs run
+ * on a bounded thread pool and a failing job, including one whose diagnostics file cannot be
+ * written, does not affect the others. The batch fails if any job fails, with a summary of the
+ * failed jobs on stderr.
+ */
+public class BatchManifest {
+
+  public static final String BATCH_MANIFEST_FLAG = "--batch-manifest";
+  public static final String BATCH_THREADS_FLAG = "--batch-threads";
+
+  private static class Job {
+    final int index;
+    final String[] args;
+    final Path diagnostics;
+
+    Job(int index, String[] args, Path diagnostics) {
+      this.index = index;
+      this.args = args;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  public static boolean isBatchManifest(String[] args) {
+    for (String arg : args) {
+      if (arg.equals(BATCH_MANIFEST_FLAG)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Runs the jobs of the manifest given in {@code args} and returns the exit code. */
+  public static int run(String[] args, PersistentWorker.Action action)
+      throws IOException, InterruptedException {
+    Path manifest = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<String> commonArgs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case BATCH_MANIFEST_FLAG:
+          if (++i >= args.length) {
+            throw new RuntimeException("Missing argument to " + BATCH_MANIFEST_FLAG);
+          }
+          manifest = Paths.get(args[i]);
+          break;
+        case BATCH_THREADS_FLAG:
+          if (++i >= args.length) {
+            throw new RuntimeException("Missing argument to " + BATCH_THREADS_FLAG);
+          }
+          threads = Integer.parseInt(args[i]);
+          break;
+        default:
+          commonArgs.add(arg);
+          break;
+      }
+    }
+    List<Job> jobs = readJobs(manifest, commonArgs);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    List<Future<Integer>> exitCodes = new ArrayList<>(jobs.size());
+    try {
+      for (Job job : jobs) {
+        exitCodes.add(executor.submit(() -> runJob(job, action)));
+      }
+      List<Job> failed = new ArrayList<>();
+      for (int i = 0; i < jobs.size(); i++) {
+        try {
+          if (exitCodes.get(i).get() != 0) {
+            failed.add(jobs.get(i));
+          }
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+      }
+      for (Job job : failed) {
+        System.err.println(
+            "Job "
+                + job.index
+                + " failed"
+                + (job.diagnostics == null ? "" : ", see " + job.diagnostics)
+                + ": "
+                + String.join(" ", job.args));
+      }
+      if (!failed.isEmpty()) {
+        System.err.println(failed.size() + " of " + jobs.size() + " jobs failed.");
+      }
+      return failed.isEmpty() ? 0 : 1;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static List<Job> readJobs(Path manifest, List<String> commonArgs) throws IOException {
+    if (manifest == null) {
+      throw new RuntimeException("Missing " + BATCH_MANIFEST_FLAG);
+    }
+    List<Job> jobs = new ArrayList<>();
+    try (Reader reader = Files.newBufferedReader(manifest)) {
+      Json json = new Json(reader);
+      while (json.hasNext()) {
+        Map<?, ?> job = (Map<?, ?>) json.next();
+        List<String> arguments = new ArrayList<>(commonArgs);
+        Object jobArguments = job.get("arguments");
+        if (jobArguments != null) {
+          for (Object argument : (List<?>) jobArguments) {
+            arguments.add((String) argument);
+          }
+        }
+        Object diagnostics = job.get("diagnostics");
+        jobs.add(
+            new Job(
+                jobs.size(),
+                arguments.toArray(new String[0]),
+                diagnostics == null ? null : Paths.get((String) diagnostics)));
+      }
+    }
+    return jobs;
+  }
+
+  private static int runJob(Job job, PersistentWorker.Action action) throws IOException {
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    int exitCode;
+    try (PrintStream output = new PrintStream(captured, true, "UTF-8")) {
+      try {
+        exitCode = action.run(job.args, output);
+      } catch (Throwable e) {
+        e.printStackTrace(output);
+        exitCode = 1;
+      }
+    }
+    if (job.diagnostics != null) {
+      try {
+        AtomicFiles.write(job.diagnostics, captured.toByteArray());
+        return exitCode;
+      } catch (IOException e) {
+        // Fail only this job, and keep its output on stdout instead.
+        synchronized (System.err) {
+          System.err.println("Job " + job.index + ": cannot write " + job.diagnostics + ": " + e);
+        }
+        exitCode = 1;
+      }
+    }
+    if (captured.size() > 0) {
+      synchronized (System.out) {
+        System.out.print(new String(captured.toByteArray(), StandardCharsets.UTF_8));
+        System.out.flush();
+      }
+    }
+    return exitCode;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResource.Kind;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Immutable index of the class files in an archive, shared by all compilations in the process.
+ *
+ * <p>Indices are keyed by the SHA-256 of the archive content, so the same jar reached through
+ * different paths, e.g., from different sandboxes, is only indexed once. Class file bytes are read
+ * on first use and then retained for later compilations.
+ *
+ * <p>An index is held from {@link #acquire} until {@link #release}. The indices that are not held
+ * are kept in least recently used order and closed once the class files of all indices exceed the
+ * retained size, see {@link #setMaxRetainedBytes}.
+ */
+public class ClassFileArchiveIndex implements ClassFileResourceProvider {
+
+  /** Default retained size relative to the maximum heap. */
+  private static final double DEFAULT_RETAINED_RATIO = 0.125;
+
+  private static final Map<String, ClassFileArchiveIndex> INDICES =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private static long maxRetainedBytes =
+      (long) (Runtime.getRuntime().maxMemory() * DEFAULT_RETAINED_RATIO);
+  private static long retainedBytes = 0;
+
+  private final Path archive;
+  private final Origin origin;
+  private final ZipFile zipFile;
+  private final Map<String, String> descriptorToEntry;
+  private final Map<String, ProgramResource> resources = new ConcurrentHashMap<>();
+  private final long classFileBytes;
+  private int users = 0;
+
+  private ClassFileArchiveIndex(Path archive) throws IOException {
+    this.archive = archive;
+    this.origin = new PathOrigin(archive);
+    this.zipFile = new ZipFile(archive.toFile());
+    Map<String, String> entries = new HashMap<>();
+    long bytes = 0;
+    Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+    while (enumeration.hasMoreElements()) {
+      ZipEntry entry = enumeration.nextElement();
+      String name = entry.getName();
+      if (ClassFileInput.isClassFileEntry(name)) {
+        entries.put(ClassFileInput.getDescriptorForEntry(name), name);
+        bytes += Math.max(entry.getSize(), 0);
+      }
+    }
+    this.descriptorToEntry = Collections.unmodifiableMap(entries);
+    this.classFileBytes = bytes;
+  }
+
+  /**
+   * Returns the shared index for the content of {@code archive}, creating it if needed, and holds
+   * it until {@link #release}.
+   */
+  public static ClassFileArchiveIndex acquire(Path archive) throws IOException {
+    String hash = ContentHash.ofFile(archive);
+    synchronized (INDICES) {
+      ClassFileArchiveIndex index = INDICES.get(hash);
+      if (index == null) {
+        index = new ClassFileArchiveIndex(archive);
+        INDICES.put(hash, index);
+        retainedBytes += index.classFileBytes;
+      }
+      index.users++;
+      evict();
+      return index;
+    }
+  }
+
+  /** Releases an index returned by {@link #acquire}. */
+  public void release() {
+    synchronized (INDICES) {
+      users--;
+      evict();
+    }
+  }
+
+  /** Sets the size of the class files retained by the indices that are not held. */
+  public static void setMaxRetainedBytes(long bytes) {
+    synchronized (INDICES) {
+      maxRetainedBytes = bytes;
+      evict();
+    }
+  }
+
+  /** Returns the size of the class files of the indices in the process. */
+  public static long getRetainedBytes() {
+    synchronized (INDICES) {
+      return retainedBytes;
+    }
+  }
+
+  /** Closes the least recently used indices that are not held until within the retained size. */
+  private static void evict() {
+    Iterator<ClassFileArchiveIndex> iterator = INDICES.values().iterator();
+    while (retainedBytes > maxRetainedBytes && iterator.hasNext()) {
+      ClassFileArchiveIndex index = iterator.next();
+      if (index.users == 0) {
+        iterator.remove();
+        retainedBytes -= index.classFileBytes;
+        index.close();
+      }
+    }
+  }
+
+  private void close() {
+    try {
+      zipFile.close();
+    } catch (IOException e) {
+      // Nothing is read from an evicted index.
+    }
+  }
+
+  @Override
+  public Set<String> getClassDescriptors() {
+    return descriptorToEntry.keySet();
+  }
+
+  @Override
+  public ProgramResource getProgramResource(String descriptor) {
+    String entryName = descriptorToEntry.get(descriptor);
+    if (entryName == null) {
+      return null;
+    }
+    return resources.computeIfAbsent(
+        descriptor,
+        key ->
+            ProgramResource.fromBytes(
+                new ArchiveEntryOrigin(entryName, origin),
+                Kind.CF,
+                readEntry(entryName),
+                Collections.singleton(descriptor)));
+  }
+
+  private byte[] readEntry(String entryName) {
+    try (InputStream stream = zipFile.getInputStream(zipFile.getEntry(entryName))) {
+      return stream.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read " + entryName + " from " + archive, e);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResourceProvider;
+import com.android.tools.r8.ResourceException;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the class files of archives that may also contain dex code.
+ *
+ * <p>Class file entries are selected on the central directory, so dex and other entries are never
+ * read. The archive is memory-mapped and the class entries are inflated in parallel. The selected
+ * entries are kept per archive, keyed by resolved path, size and modification time, so archives
+ * passed to many compilations of a worker are only indexed once.
+ *
+ * <p>The indices are kept in least recently used order up to a mapped size, see {@link
+ * #setMaxRetainedBytes}. No file is held open by an index, and the mapping of an evicted index is
+ * released once the compilations reading it are done with it.
+ */
+public class ClassFileArchiveReader {
+
+  /** Default mapped size of the retained indices relative to the maximum heap. */
+  private static final double DEFAULT_RETAINED_RATIO = 0.125;
+
+  private static final Map<ContentHash.FileKey, Index> INDICES =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private static long maxRetainedBytes =
+      (long) (Runtime.getRuntime().maxMemory() * DEFAULT_RETAINED_RATIO);
+  private static long retainedBytes = 0;
+
+  private static class Index {
+    final ZipArchive archive;
+    final long size;
+    final List<ZipArchive.Entry> classEntries;
+
+    Index(ZipArchive archive, long size) {
+      this.archive = archive;
+      this.size = size;
+      List<ZipArchive.Entry> entries = new ArrayList<>();
+      for (ZipArchive.Entry entry : archive.getEntries()) {
+        if (ClassFileInput.isClassFileEntry(entry.getName())) {
+          entries.add(entry);
+        }
+      }
+      this.classEntries = Collections.unmodifiableList(entries);
+    }
+  }
+
+  /** Sets the mapped size of the archives whose indices are retained. */
+  public static void setMaxRetainedBytes(long bytes) {
+    synchronized (INDICES) {
+      maxRetainedBytes = bytes;
+      evict();
+    }
+  }
+
+  /** Returns the mapped size of the archives whose indices are retained. */
+  public static long getRetainedBytes() {
+    synchronized (INDICES) {
+      return retainedBytes;
+    }
+  }
+
+  private static Index getIndex(Path archive) throws IOException {
+    ContentHash.FileKey key = ContentHash.FileKey.of(archive);
+    synchronized (INDICES) {
+      Index index = INDICES.get(key);
+      if (index != null) {
+        return index;
+      }
+    }
+    Index index = new Index(ZipArchive.open(key.path), key.size);
+    synchronized (INDICES) {
+      // Drop the index of a previous version of the archive.
+      Iterator<Map.Entry<ContentHash.FileKey, Index>> iterator = INDICES.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<ContentHash.FileKey, Index> other = iterator.next();
+        if (other.getKey().path.equals(key.path)) {
+          retainedBytes -= other.getValue().size;
+          iterator.remove();
+        }
+      }
+      INDICES.put(key, index);
+      retainedBytes += index.size;
+      evict();
+    }
+    return index;
+  }
+
+  /** Removes the least recently used indices until within the retained size. */
+  private static void evict() {
+    Iterator<Index> iterator = INDICES.values().iterator();
+    while (retainedBytes > maxRetainedBytes && iterator.hasNext()) {
+      retainedBytes -= iterator.next().size;
+      iterator.remove();
+    }
+  }
+
+  /** Reads all class file entries of {@code archive}, in archive order. */
+  public static List<ClassFileInput> readClasses(Path archive) throws IOException {
+    Index index = getIndex(archive);
+    Origin archiveOrigin = new PathOrigin(archive);
+    try {
+      return index.classEntries.parallelStream()
+          .map(
+              entry -> {
+                try {
+                  return new ClassFileInput(
+                      ClassFileInput.getDescriptorForEntry(entry.getName()),
+                      index.archive.read(entry),
+                      new ArchiveEntryOrigin(entry.getName(), archiveOrigin));
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              })
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Program provider for the class files of {@code archive}, read when first requested. */
+  public static ProgramResourceProvider programProvider(Path archive) {
+    return () -> {
+      try {
+        List<ClassFileInput> classes = readClasses(archive);
+        List<ProgramResource> resources = new ArrayList<>(classes.size());
+        for (ClassFileInput clazz : classes) {
+          resources.add(clazz.toProgramResource());
+        }
+        return resources;
+      } catch (IOException e) {
+        throw new ResourceException(new PathOrigin(archive), e);
+      }
+    };
+  }
+}
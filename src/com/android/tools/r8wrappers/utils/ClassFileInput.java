@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResource.Kind;
+import com.android.tools.r8.ProgramResourceProvider;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/** A program class file read into memory, identified by its descriptor. */
+public class ClassFileInput {
+
+  private final String descriptor;
+  private final byte[] bytes;
+  private final Origin origin;
+
+  public ClassFileInput(String descriptor, byte[] bytes, Origin origin) {
+    this.descriptor = descriptor;
+    this.bytes = bytes;
+    this.origin = origin;
+  }
+
+  public String getDescriptor() {
+    return descriptor;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public Origin getOrigin() {
+    return origin;
+  }
+
+  public ProgramResource toProgramResource() {
+    return ProgramResource.fromBytes(origin, Kind.CF, bytes, Collections.singleton(descriptor));
+  }
+
+  public static boolean isArchive(Path path) {
+    String name = path.getFileName().toString();
+    return name.endsWith(".jar") || name.endsWith(".zip");
+  }
+
+  public static boolean isClassFileEntry(String name) {
+    return name.endsWith(".class")
+        && !name.startsWith("META-INF/")
+        && !name.equals("module-info.class");
+  }
+
+  public static boolean isDexEntry(String name) {
+    return name.endsWith(".dex");
+  }
+
+  /** Returns true if {@code archive} has dex entries, which the compiler also takes as input. */
+  public static boolean hasDexEntries(Path archive) throws IOException {
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        if (isDexEntry(entries.nextElement().getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public static String getDescriptorForEntry(String name) {
+    return "L" + name.substring(0, name.length() - ".class".length()) + ";";
+  }
+
+  /** Reads all class file entries of {@code archive}, in archive order. */
+  public static List<ClassFileInput> readArchive(Path archive) throws IOException {
+    Origin archiveOrigin = new PathOrigin(archive);
+    List<ClassFileInput> classes = new ArrayList<>();
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!isClassFileEntry(name)) {
+          continue;
+        }
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+          classes.add(
+              new ClassFileInput(
+                  getDescriptorForEntry(name),
+                  stream.readAllBytes(),
+                  new ArchiveEntryOrigin(name, archiveOrigin)));
+        }
+      }
+    }
+    return classes;
+  }
+
+  /** Program provider for {@code classes}. */
+  public static ProgramResourceProvider programProvider(Collection<ClassFileInput> classes) {
+    List<ProgramResource> resources = new ArrayList<>(classes.size());
+    for (ClassFileInput clazz : classes) {
+      resources.add(clazz.toProgramResource());
+    }
+    return () -> resources;
+  }
+
+  /** Classpath provider for {@code classes}. */
+  public static ClassFileResourceProvider classpathProvider(Collection<ClassFileInput> classes) {
+    Map<String, ClassFileInput> byDescriptor = new HashMap<>();
+    for (ClassFileInput clazz : classes) {
+      byDescriptor.putIfAbsent(clazz.getDescriptor(), clazz);
+    }
+    return new ClassFileResourceProvider() {
+      @Override
+      public Set<String> getClassDescriptors() {
+        return byDescriptor.keySet();
+      }
+
+      @Override
+      public ProgramResource getProgramResource(String descriptor) {
+        ClassFileInput clazz = byDescriptor.get(descriptor);
+        return clazz == null ? null : clazz.toProgramResource();
+      }
+    };
+  }
+}
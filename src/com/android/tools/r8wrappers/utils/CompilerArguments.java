@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ParseFlagInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiler command line split into options and input files.
+ *
+ * <p>The number of values taken by each option is derived from the compiler's own flag formats,
+ * e.g., "--output &lt;file&gt;" takes one value, so the split stays in sync with the compiler.
+ * Argument files given as "@&lt;argfile&gt;" are expanded with one argument per line.
+ */
+public class CompilerArguments {
+
+  /**
+   * Compiler options whose value is an output, which is neither a dependency nor part of the
+   * identity of a compilation.
+   */
+  public static final List<String> OUTPUT_FLAGS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              "--output",
+              "--pg-map-output",
+              "--main-dex-list-output",
+              "--desugared-lib-pg-conf-output",
+              "--resource-output"));
+
+  private final List<String> options;
+  private final List<Path> inputs;
+
+  private CompilerArguments(List<String> options, List<Path> inputs) {
+    this.options = options;
+    this.inputs = inputs;
+  }
+
+  public static CompilerArguments split(String[] args, List<ParseFlagInfo> flags)
+      throws IOException {
+    Map<String, Integer> arities = new HashMap<>();
+    for (ParseFlagInfo flag : flags) {
+      addArity(flag.getFlagFormat(), arities);
+      for (String alternative : flag.getFlagFormatAlternatives()) {
+        addArity(alternative, arities);
+      }
+    }
+    List<String> expanded = expandArgumentFiles(args);
+    List<String> options = new ArrayList<>();
+    List<Path> inputs = new ArrayList<>();
+    for (int i = 0; i < expanded.size(); i++) {
+      String arg = expanded.get(i);
+      if (!arg.startsWith("-")) {
+        inputs.add(Paths.get(arg));
+        continue;
+      }
+      options.add(arg);
+      int colon = arg.indexOf(':');
+      String name = colon > 0 ? arg.substring(0, colon) : arg;
+      int arity = arities.getOrDefault(name, 0);
+      for (int j = 0; j < arity && i + 1 < expanded.size(); j++) {
+        options.add(expanded.get(++i));
+      }
+    }
+    return new CompilerArguments(
+        Collections.unmodifiableList(options), Collections.unmodifiableList(inputs));
+  }
+
+  /** Expands "@&lt;argfile&gt;" arguments, with one argument per line of the file. */
+  public static List<String> expandArgumentFiles(String[] args) throws IOException {
+    List<String> expanded = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("@")) {
+        expanded.addAll(Files.readAllLines(Paths.get(arg.substring(1))));
+      } else {
+        expanded.add(arg);
+      }
+    }
+    return expanded;
+  }
+
+  private static void addArity(String format, Map<String, Integer> arities) {
+    String[] parts = format.trim().split("\\s+");
+    String name = parts[0];
+    int optional = name.indexOf('[');
+    if (optional > 0) {
+      name = name.substring(0, optional);
+    }
+    int arity = 0;
+    for (int i = 1; i < parts.length; i++) {
+      if (parts[i].startsWith("<")) {
+        arity++;
+      }
+    }
+    arities.put(name, arity);
+  }
+
+  /** Options and their values, in command line order. */
+  public List<String> getOptions() {
+    return options;
+  }
+
+  /** Positional input files, in command line order. */
+  public List<Path> getInputs() {
+    return inputs;
+  }
+
+  public boolean hasOption(String option) {
+    return options.contains(option);
+  }
+
+  /** Returns the value following the last occurrence of {@code option}, or null. */
+  public String getOptionValue(String option) {
+    int index = options.lastIndexOf(option);
+    return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : null;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compiler system properties for a single compilation.
+ *
+ * <p>The compiler only reads its experimental settings from system properties, which are global to
+ * the process. Instead of setting them directly, each compilation collects its properties here and
+ * runs inside {@link #runWith}. Compilations with identical properties run concurrently, while a
+ * compilation with different properties waits until the running ones have finished and then
+ * installs its own.
+ */
+public class CompilerProperties {
+
+  /** A compilation step that runs with the properties installed. */
+  public interface Compilation<E extends Exception> {
+    void run() throws E;
+  }
+
+  private static final ReentrantLock LOCK = new ReentrantLock();
+  private static final Condition CHANGED = LOCK.newCondition();
+  private static Map<String, String> installed = Collections.emptyMap();
+  private static int running = 0;
+  private static int waiting = 0;
+  private static long installations = 0;
+
+  private final SortedMap<String, String> properties = new TreeMap<>();
+
+  public CompilerProperties set(String key) {
+    properties.put(key, "1");
+    return this;
+  }
+
+  public CompilerProperties set(String key, boolean enabled) {
+    if (enabled) {
+      set(key);
+    } else {
+      properties.remove(key);
+    }
+    return this;
+  }
+
+  public boolean isSet(String key) {
+    return properties.containsKey(key);
+  }
+
+  public Map<String, String> getProperties() {
+    return Collections.unmodifiableMap(properties);
+  }
+
+  public <E extends Exception> void runWith(Compilation<E> compilation) throws E {
+    enter();
+    try {
+      compilation.run();
+    } finally {
+      exit();
+    }
+  }
+
+  private void enter() {
+    LOCK.lock();
+    try {
+      // Join running compilations only if they use the same properties and nobody is waiting, so
+      // that a steady stream of one configuration cannot starve the others.
+      boolean compatible = running > 0 && installed.equals(properties) && waiting == 0;
+      if (running > 0 && !compatible) {
+        waiting++;
+        long generation = installations;
+        try {
+          // Wait for the running compilations to finish, or for a compilation that started after
+          // this one began waiting to install the same properties.
+          while (running > 0 && (installations == generation || !installed.equals(properties))) {
+            CHANGED.awaitUninterruptibly();
+          }
+        } finally {
+          waiting--;
+        }
+      }
+      if (running == 0) {
+        install();
+      }
+      running++;
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private void exit() {
+    LOCK.lock();
+    try {
+      if (--running == 0) {
+        CHANGED.signalAll();
+      }
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  private void install() {
+    for (String key : installed.keySet()) {
+      System.clearProperty(key);
+    }
+    properties.forEach(System::setProperty);
+    installed = new TreeMap<>(properties);
+    installations++;
+    CHANGED.signalAll();
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/** SHA-256 content hashing of files and data, used as keys for the wrapper caches. */
+public class ContentHash {
+
+  /** Number of file hashes kept for the later compilations of the process. */
+  private static final int MAX_FILE_HASHES = 1 << 14;
+
+  /**
+   * Files modified more recently than this are not memoized, since a file system may not record a
+   * later change within the resolution of its modification times.
+   */
+  private static final long RECENT_MODIFICATION_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private static final Map<FileKey, String> FILE_HASHES =
+      new LinkedHashMap<FileKey, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, String> eldest) {
+          return size() > MAX_FILE_HASHES;
+        }
+      };
+
+  private final MessageDigest digest;
+
+  public ContentHash() {
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public ContentHash add(byte[] bytes) {
+    return add(bytes, 0, bytes.length);
+  }
+
+  public ContentHash add(byte[] bytes, int offset, int length) {
+    // Prefix with the length so that consecutive values cannot be confused.
+    addLength(length);
+    digest.update(bytes, offset, length);
+    return this;
+  }
+
+  public ContentHash add(String string) {
+    return add(string.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public ContentHash add(long value) {
+    return add(Long.toString(value));
+  }
+
+  public ContentHash addFile(Path file) throws IOException {
+    return add(ofFile(file));
+  }
+
+  public String hash() {
+    return toHex(digest.digest());
+  }
+
+  private void addLength(int length) {
+    digest.update((byte) (length >>> 24));
+    digest.update((byte) (length >>> 16));
+    digest.update((byte) (length >>> 8));
+    digest.update((byte) length);
+  }
+
+  public static String of(byte[] bytes) {
+    return new ContentHash().add(bytes).hash();
+  }
+
+  /**
+   * Returns the hash of the content of {@code file}, reusing the previous result while the resolved
+   * path, size and modification time are unchanged. The result for a file modified in the last
+   * {@link #RECENT_MODIFICATION_NANOS} is not reused.
+   */
+  public static String ofFile(Path file) throws IOException {
+    FileKey key = FileKey.of(file);
+    synchronized (FILE_HASHES) {
+      String hash = FILE_HASHES.get(key);
+      if (hash != null) {
+        return hash;
+      }
+    }
+    String hash = hashFile(key.path);
+    long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    if (now - key.lastModified >= RECENT_MODIFICATION_NANOS) {
+      synchronized (FILE_HASHES) {
+        FILE_HASHES.put(key, hash);
+      }
+    }
+    return hash;
+  }
+
+  private static String hashFile(Path file) throws IOException {
+    ContentHash hash = new ContentHash();
+    byte[] buffer = new byte[1 << 16];
+    try (InputStream stream = Files.newInputStream(file)) {
+      int read;
+      while ((read = stream.read(buffer)) > 0) {
+        hash.digest.update(buffer, 0, read);
+      }
+    }
+    return hash.hash();
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+      builder.append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Identifies the current content of a file by its resolved path, size and modification time in
+   * nanoseconds.
+   */
+  static class FileKey {
+    final Path path;
+    final long size;
+    final long lastModified;
+
+    FileKey(Path path, long size, long lastModified) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    static FileKey of(Path file) throws IOException {
+      Path realPath = file.toRealPath();
+      BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+      return new FileKey(
+          realPath, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (other == null || getClass() != other.getClass()) {
+        return false;
+      }
+      FileKey otherKey = (FileKey) other;
+      return size == otherKey.size
+          && lastModified == otherKey.lastModified
+          && path.equals(otherKey.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, size, lastModified);
+    }
+  }
+}
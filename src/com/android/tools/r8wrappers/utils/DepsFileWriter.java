@@ -18,13 +18,12 @@ package com.android.tools.r8wrappers.utils;
 import com.android.tools.r8.InputDependencyGraphConsumer;
 import com.android.tools.r8.origin.Origin;
 import java.io.IOException;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -49,20 +48,20 @@ public class DepsFileWriter implements InputDependencyGraphConsumer {
   public void finished() {
     List<Path> sorted = new ArrayList<>(dependencies);
     sorted.sort(Path::compareTo);
+    StringBuilder builder = new StringBuilder();
+    builder.append(escape(dependentFile.toString())).append(":");
+    for (Path path : sorted) {
+      builder.append(" ").append(escape(path.toString()));
+    }
+    builder.append("\n");
+    byte[] content = builder.toString().getBytes(StandardCharsets.UTF_8);
     Path output = Paths.get(dependencyOutput);
-    try (Writer writer =
-        Files.newBufferedWriter(
-            output,
-            StandardCharsets.UTF_8,
-            StandardOpenOption.CREATE,
-            StandardOpenOption.TRUNCATE_EXISTING)) {
-      writer.write(escape(dependentFile.toString()));
-      writer.write(":");
-      for (Path path : sorted) {
-        writer.write(" ");
-        writer.write(escape(path.toString()));
+    try {
+      // Keep the timestamp of an unchanged deps file so that dependent actions are not rerun.
+      if (Files.isRegularFile(output) && Arrays.equals(content, Files.readAllBytes(output))) {
+        return;
       }
-      writer.write("\n");
+      Files.write(output, content);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
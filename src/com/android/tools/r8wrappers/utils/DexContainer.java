@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * DEX container output, where the dex files of a multi-dex program are sections of a single file
+ * that share their string data.
+ *
+ * <p>The compilers only write the container format with the experimental system property {@link
+ * #DEX_CONTAINER_PROPERTY}. The size report is computed from the output alone: in a container the
+ * string ids of each section refer to string data anywhere in the container, so the equivalent
+ * classic dex files would each hold a copy of the string data they refer to. The classic size is
+ * estimated as the container size plus those copies.
+ */
+public class DexContainer {
+
+  public static final String DEX_CONTAINER_FLAG = "--dex-container";
+  public static final String DEX_CONTAINER_REPORT_FLAG = "--dex-container-report";
+  public static final String DEX_CONTAINER_PROPERTY =
+      "com.android.tools.r8.dexContainerExperiment";
+
+  private static final int HEADER_SIZE = 0x70;
+  private static final int FILE_SIZE_OFFSET = 0x20;
+  private static final int STRING_IDS_SIZE_OFFSET = 0x38;
+  private static final int STRING_IDS_OFF_OFFSET = 0x3c;
+  private static final String CONTAINER_VERSION = "041";
+
+  /** Sizes of one output dex file. */
+  private static class DexFileSizes {
+    final String name;
+    final long size;
+    int sections = 0;
+    boolean container = false;
+    long stringData = 0;
+    long sharedStringData = 0;
+
+    DexFileSizes(String name, long size) {
+      this.name = name;
+      this.size = size;
+    }
+
+    long getClassicSize() {
+      return size + sharedStringData;
+    }
+  }
+
+  /**
+   * Writes the sizes of the dex files in {@code output}, a directory or an archive, to {@code
+   * report} as JSON, and returns a summary.
+   */
+  public static String writeReport(Path output, Path report) throws IOException {
+    Map<String, byte[]> dexFiles = readDexFiles(output);
+    List<DexFileSizes> files = new ArrayList<>(dexFiles.size());
+    dexFiles.forEach((name, bytes) -> files.add(analyze(name, bytes)));
+    long size = 0;
+    long classicSize = 0;
+    int sections = 0;
+    StringBuilder json = new StringBuilder();
+    json.append("{\"output\":").append(Json.quote(output.toString())).append(",\"files\":[");
+    for (int i = 0; i < files.size(); i++) {
+      DexFileSizes file = files.get(i);
+      size += file.size;
+      classicSize += file.getClassicSize();
+      sections += file.sections;
+      json.append(i == 0 ? "" : ",")
+          .append("{\"name\":")
+          .append(Json.quote(file.name))
+          .append(",\"container\":")
+          .append(file.container)
+          .append(",\"sections\":")
+          .append(file.sections)
+          .append(",\"bytes\":")
+          .append(file.size)
+          .append(",\"stringDataBytes\":")
+          .append(file.stringData)
+          .append(",\"classicBytes\":")
+          .append(file.getClassicSize())
+          .append("}");
+    }
+    json.append("],\"bytes\":")
+        .append(size)
+        .append(",\"classicBytes\":")
+        .append(classicSize)
+        .append("}\n");
+    AtomicFiles.write(report, json.toString().getBytes(StandardCharsets.UTF_8));
+    return "DEX output "
+        + output
+        + ": "
+        + files.size()
+        + " files with "
+        + sections
+        + " dex sections, "
+        + size
+        + " bytes, estimated classic dex "
+        + classicSize
+        + " bytes"
+        + (classicSize == 0
+            ? "."
+            : String.format(" (%.1f%% saved).", 100.0 * (classicSize - size) / classicSize));
+  }
+
+  private static Map<String, byte[]> readDexFiles(Path output) throws IOException {
+    Map<String, byte[]> dexFiles = new TreeMap<>();
+    if (Files.isDirectory(output)) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(output, "*.dex")) {
+        for (Path file : stream) {
+          dexFiles.put(file.getFileName().toString(), Files.readAllBytes(file));
+        }
+      }
+    } else if (Files.isRegularFile(output)) {
+      ZipArchive archive = ZipArchive.open(output);
+      for (ZipArchive.Entry entry : archive.getEntries()) {
+        if (entry.getName().endsWith(".dex")) {
+          dexFiles.put(entry.getName(), archive.read(entry));
+        }
+      }
+    }
+    return dexFiles;
+  }
+
+  private static DexFileSizes analyze(String name, byte[] bytes) {
+    DexFileSizes sizes = new DexFileSizes(name, bytes.length);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    // String data offset to the number of sections referring to it, and its length.
+    Map<Integer, int[]> stringData = new HashMap<>();
+    int sectionStart = 0;
+    while (sectionStart + HEADER_SIZE <= bytes.length && isDexHeader(bytes, sectionStart)) {
+      sizes.sections++;
+      sizes.container |=
+          new String(bytes, sectionStart + 4, 3, StandardCharsets.US_ASCII)
+              .equals(CONTAINER_VERSION);
+      int stringIdsSize = buffer.getInt(sectionStart + STRING_IDS_SIZE_OFFSET);
+      // The id tables are relative to the section, the string data to the start of the container.
+      int stringIds = sectionStart + buffer.getInt(sectionStart + STRING_IDS_OFF_OFFSET);
+      if (stringIdsSize < 0 || stringIds < 0 || stringIds + 4L * stringIdsSize > bytes.length) {
+        break;
+      }
+      for (int i = 0; i < stringIdsSize; i++) {
+        int offset = buffer.getInt(stringIds + 4 * i);
+        if (offset < 0 || offset >= bytes.length) {
+          continue;
+        }
+        int[] data = stringData.get(offset);
+        if (data == null) {
+          data = new int[] {0, getStringDataLength(bytes, offset)};
+          stringData.put(offset, data);
+        }
+        data[0]++;
+      }
+      int sectionSize = buffer.getInt(sectionStart + FILE_SIZE_OFFSET);
+      if (sectionSize <= 0) {
+        break;
+      }
+      sectionStart += sectionSize;
+    }
+    for (int[] data : stringData.values()) {
+      sizes.stringData += data[1];
+      sizes.sharedStringData += (long) (data[0] - 1) * data[1];
+    }
+    return sizes;
+  }
+
+  private static boolean isDexHeader(byte[] bytes, int offset) {
+    return bytes[offset] == 'd'
+        && bytes[offset + 1] == 'e'
+        && bytes[offset + 2] == 'x'
+        && bytes[offset + 3] == '\n';
+  }
+
+  /** Length of the string data item at {@code offset}: ULEB128 size, MUTF-8 bytes and a zero. */
+  private static int getStringDataLength(byte[] bytes, int offset) {
+    int position = offset;
+    while (position < bytes.length && (bytes[position] & 0x80) != 0) {
+      position++;
+    }
+    position++;
+    while (position < bytes.length && bytes[position] != 0) {
+      position++;
+    }
+    return Math.min(position + 1, bytes.length) - offset;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.DiagnosticsLevel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Table of diagnostics level overrides by diagnostic kind, type and origin.
+ *
+ * <p>Each line of a rules file is {@code <level> <kind> <type> [<origin>]}, and {@code #} starts a
+ * comment. The level is one of {@code none}, {@code info}, {@code warning} and {@code error}, where
+ * {@code none} suppresses the diagnostic. The kind is the simple class name of the diagnostic or
+ * {@code *} for all kinds. The type is a type name, {@code pkg.*} for the types in a package,
+ * {@code prefix**} for the types starting with a prefix, or {@code *} for all diagnostics, also
+ * those without a type. The optional origin is a segment of the origin path, e.g., a module
+ * directory or a jar name with or without its extension.
+ *
+ * <p>The type patterns of a kind are stored in a trie and the origins of a pattern in a hash map,
+ * so classifying a diagnostic is linear in the length of its type and origin names, independent of
+ * the number of rules. The most specific type pattern that matches wins: the longest one, with an
+ * exact type before a package before a prefix. For the same pattern a rule with an origin wins over
+ * one without, and the rules of a kind win over those of {@code *}.
+ */
+public class DiagnosticsRules {
+
+  public static final String DIAGNOSTICS_RULES_FLAG = "--diagnostics-rules";
+
+  private static final String ANY = "*";
+
+  /** The levels of a type pattern, by origin segment. */
+  private static class Levels {
+    DiagnosticsLevel anyOrigin = null;
+    final Map<String, DiagnosticsLevel> byOrigin = new HashMap<>();
+
+    DiagnosticsLevel get(List<String> originSegments) {
+      if (!byOrigin.isEmpty()) {
+        for (String segment : originSegments) {
+          DiagnosticsLevel level = byOrigin.get(segment);
+          if (level != null) {
+            return level;
+          }
+        }
+      }
+      return anyOrigin;
+    }
+  }
+
+  private static class TrieNode {
+    final Map<Character, TrieNode> children = new HashMap<>();
+    // Levels of the type equal to, in the package of, and starting with the path to this node.
+    Levels exact = null;
+    Levels inPackage = null;
+    Levels prefix = null;
+  }
+
+  private final Map<String, TrieNode> kinds = new HashMap<>();
+  private int size = 0;
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Adds the rules of {@code file}. */
+  public void parse(Path file) throws IOException {
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(file)) {
+      lineNumber++;
+      int comment = line.indexOf('#');
+      if (comment >= 0) {
+        line = line.substring(0, comment);
+      }
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] parts = line.split("\\s+");
+      if (parts.length < 3 || parts.length > 4) {
+        throw new RuntimeException(
+            file + ":" + lineNumber + ": Expected <level> <kind> <type> [<origin>]: " + line);
+      }
+      DiagnosticsLevel level;
+      try {
+        level = DiagnosticsLevel.valueOf(parts[0].toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new RuntimeException(file + ":" + lineNumber + ": Invalid level " + parts[0]);
+      }
+      add(level, parts[1], parts[2], parts.length == 4 ? parts[3] : null);
+    }
+  }
+
+  /** Adds a rule, see the class documentation for the format of the arguments. */
+  public void add(DiagnosticsLevel level, String kind, String type, String origin) {
+    TrieNode node = kinds.computeIfAbsent(kind, k -> new TrieNode());
+    Levels levels;
+    if (type.equals(ANY) || type.endsWith("**")) {
+      node = insert(node, type.equals(ANY) ? "" : type.substring(0, type.length() - 2));
+      if (node.prefix == null) {
+        node.prefix = new Levels();
+      }
+      levels = node.prefix;
+    } else if (type.endsWith(".*")) {
+      node = insert(node, type.substring(0, type.length() - 1));
+      if (node.inPackage == null) {
+        node.inPackage = new Levels();
+      }
+      levels = node.inPackage;
+    } else {
+      node = insert(node, type);
+      if (node.exact == null) {
+        node.exact = new Levels();
+      }
+      levels = node.exact;
+    }
+    if (origin == null) {
+      levels.anyOrigin = level;
+    } else {
+      levels.byOrigin.put(origin, level);
+    }
+    size++;
+  }
+
+  private static TrieNode insert(TrieNode node, String key) {
+    for (int i = 0; i < key.length(); i++) {
+      node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode());
+    }
+    return node;
+  }
+
+  /**
+   * Returns the level of the most specific rule for a diagnostic of {@code kind} about {@code
+   * type}, or null if no rule matches. The type is null for diagnostics without one.
+   */
+  public DiagnosticsLevel classify(String kind, String type, List<String> originSegments) {
+    DiagnosticsLevel level = classify(kinds.get(kind), type, originSegments);
+    return level != null ? level : classify(kinds.get(ANY), type, originSegments);
+  }
+
+  private static DiagnosticsLevel classify(
+      TrieNode root, String type, List<String> originSegments) {
+    if (root == null) {
+      return null;
+    }
+    DiagnosticsLevel result = get(root.prefix, originSegments);
+    if (type == null) {
+      return result;
+    }
+    int packageEnd = type.lastIndexOf('.') + 1;
+    TrieNode node = root;
+    for (int i = 0; i < type.length(); i++) {
+      node = node.children.get(type.charAt(i));
+      if (node == null) {
+        break;
+      }
+      DiagnosticsLevel level = null;
+      if (i + 1 == type.length()) {
+        level = get(node.exact, originSegments);
+      }
+      if (level == null && i + 1 == packageEnd) {
+        level = get(node.inPackage, originSegments);
+      }
+      if (level == null) {
+        level = get(node.prefix, originSegments);
+      }
+      if (level != null) {
+        result = level;
+      }
+    }
+    return result;
+  }
+
+  private static DiagnosticsLevel get(Levels levels, List<String> originSegments) {
+    return levels == null ? null : levels.get(originSegments);
+  }
+
+  /**
+   * Splits an origin into the segments rules can match: the path components, also without a file
+   * extension, from the innermost one.
+   */
+  public static List<String> getOriginSegments(String origin) {
+    List<String> segments = new ArrayList<>();
+    int end = origin.length();
+    for (int i = origin.length() - 1; i >= -1; i--) {
+      char c = i < 0 ? '/' : origin.charAt(i);
+      if (c == '/' || c == '\\' || c == ':' || c == '!') {
+        if (end > i + 1) {
+          String segment = origin.substring(i + 1, end);
+          segments.add(segment);
+          int extension = segment.lastIndexOf('.');
+          if (extension > 0 && isExtension(segment, extension + 1)) {
+            segments.add(segment.substring(0, extension));
+          }
+        }
+        end = i;
+      }
+    }
+    return segments;
+  }
+
+  private static boolean isExtension(String segment, int start) {
+    String extension = segment.substring(start);
+    return extension.equals("jar")
+        || extension.equals("zip")
+        || extension.equals("apk")
+        || extension.equals("class")
+        || extension.equals("dex");
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.StringConsumer;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compressed text outputs, and reading of text files that may be gzip compressed.
+ *
+ * <p>Compressed files are recognized by their content, not their name, so tools read a file the
+ * same whether or not the build compressed it.
+ */
+public class GzipFiles {
+
+  public static final String GZIP_PRINT_OUTPUTS_FLAG = "--gzip-print-outputs";
+
+  private static final int GZIP_MAGIC_0 = 0x1f;
+  private static final int GZIP_MAGIC_1 = 0x8b;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  public static boolean isGzip(Path path) throws IOException {
+    try (InputStream stream = Files.newInputStream(path)) {
+      return stream.read() == GZIP_MAGIC_0 && stream.read() == GZIP_MAGIC_1;
+    }
+  }
+
+  /** Opens {@code path} for reading, decompressing it if it is gzip compressed. */
+  public static InputStream newInputStream(Path path) throws IOException {
+    InputStream stream = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+    stream.mark(2);
+    boolean gzip = stream.read() == GZIP_MAGIC_0 && stream.read() == GZIP_MAGIC_1;
+    stream.reset();
+    return gzip ? new GZIPInputStream(stream, BUFFER_SIZE) : stream;
+  }
+
+  /** Opens the UTF-8 text file {@code path} for reading, decompressing it if needed. */
+  public static BufferedReader newBufferedReader(Path path) throws IOException {
+    return new BufferedReader(new InputStreamReader(newInputStream(path), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns a consumer that compresses the text as it is produced into a temporary file, which is
+   * moved to {@code path} when finished. The gzip header has no timestamp, so the output only
+   * depends on the text. The caller calls {@link GzipStringConsumer#discard} when the compilation
+   * is done, which removes the temporary file if the compilation failed before finishing it.
+   */
+  public static GzipStringConsumer stringConsumer(Path path) {
+    return new GzipStringConsumer(path);
+  }
+
+  public static class GzipStringConsumer implements StringConsumer {
+    private final Path path;
+    private Path temp = null;
+    private Writer writer = null;
+
+    GzipStringConsumer(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public synchronized void accept(String string, DiagnosticsHandler handler) {
+      try {
+        if (writer == null) {
+          open();
+        }
+        writer.write(string);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to write " + path, e);
+      }
+    }
+
+    @Override
+    public synchronized void finished(DiagnosticsHandler handler) {
+      try {
+        if (writer == null) {
+          open();
+        }
+        writer.close();
+        writer = null;
+        AtomicFiles.move(temp, path);
+        temp = null;
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to write " + path, e);
+      } finally {
+        discard();
+      }
+    }
+
+    /** Deletes the temporary file if the output was not finished. */
+    public synchronized void discard() {
+      try {
+        if (writer != null) {
+          writer.close();
+        }
+        if (temp != null) {
+          Files.deleteIfExists(temp);
+        }
+      } catch (IOException e) {
+        // The file is left behind, e.g., if the directory is no longer writable.
+      } finally {
+        writer = null;
+        temp = null;
+      }
+    }
+
+    private void open() throws IOException {
+      Path parent = path.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+      writer =
+          new OutputStreamWriter(
+              new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE),
+              StandardCharsets.UTF_8);
+    }
+  }
+}
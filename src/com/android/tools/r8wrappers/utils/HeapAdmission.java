@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Admits concurrent compilations in a long-lived process against a heap budget.
+ *
+ * <p>The heap needed by a compilation is estimated from the recorded peak heap of earlier
+ * compilations of the same output, or else from the size of its inputs. Compilations are admitted
+ * in arrival order while their estimates fit in the budget, and a compilation is always admitted
+ * when nothing else is running, so one larger than the budget can still run alone. The peak heap of
+ * a compilation is recorded for its next estimate when it is known, see {@link PeakHeap}.
+ */
+public class HeapAdmission {
+
+  public static final String HEAP_BUDGET_FLAG = "--heap-budget";
+  public static final String HEAP_HISTORY_FLAG = "--heap-history";
+
+  /** Default budget relative to the maximum heap, leaving room for the process itself. */
+  private static final double DEFAULT_BUDGET_RATIO = 0.8;
+
+  private static final long BASE_ESTIMATE = 256L << 20;
+
+  private final String tool;
+  private final long budget;
+  private final long heapPerInputByte;
+  private final Map<String, Long> history = new ConcurrentHashMap<>();
+  private final Deque<Admission> waiting = new ArrayDeque<>();
+  private final Set<Admission> running = new HashSet<>();
+  private long used = 0;
+
+  private HeapAdmission(String tool, long budget, long heapPerInputByte) {
+    this.tool = tool;
+    this.budget = budget;
+    this.heapPerInputByte = heapPerInputByte;
+  }
+
+  /**
+   * Creates the admission control for {@code tool} from the process arguments {@link
+   * #HEAP_BUDGET_FLAG} and {@link #HEAP_HISTORY_FLAG}, the latter a log written by {@link
+   * MetricsLog}.
+   */
+  public static HeapAdmission create(String tool, String[] args, long heapPerInputByte)
+      throws IOException {
+    long budget = (long) (Runtime.getRuntime().maxMemory() * DEFAULT_BUDGET_RATIO);
+    Path history = null;
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals(HEAP_BUDGET_FLAG)) {
+        budget = Long.parseLong(args[++i]);
+      } else if (args[i].equals(HEAP_HISTORY_FLAG)) {
+        history = Paths.get(args[++i]);
+      }
+    }
+    HeapAdmission admission = new HeapAdmission(tool, budget, heapPerInputByte);
+    if (history != null && Files.exists(history)) {
+      admission.loadHistory(history);
+    }
+    return admission;
+  }
+
+  private void loadHistory(Path log) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(log)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Object json;
+        try {
+          json = Json.parse(line);
+        } catch (RuntimeException e) {
+          // A partially written record, e.g., from a killed action.
+          continue;
+        }
+        if (!(json instanceof Map)) {
+          continue;
+        }
+        Map<?, ?> record = (Map<?, ?>) json;
+        Object peakHeap = record.get("peakHeapBytes");
+        if (tool.equals(record.get("tool"))
+            && Boolean.TRUE.equals(record.get("success"))
+            && peakHeap instanceof Number
+            && ((Number) peakHeap).longValue() > 0) {
+          history.put(String.valueOf(record.get("output")), ((Number) peakHeap).longValue());
+        }
+      }
+    }
+  }
+
+  /** A running compilation, which releases its share of the budget when closed. */
+  public class Admission implements AutoCloseable {
+    private final String output;
+    private final long estimate;
+    private PeakHeap.Measurement peakHeap = null;
+    private boolean recordPeak = true;
+
+    private Admission(String output, long estimate) {
+      this.output = output;
+      this.estimate = estimate;
+    }
+
+    /** Does not record the peak heap, e.g., of a compilation restored from a cache. */
+    public void discardPeak() {
+      recordPeak = false;
+    }
+
+    @Override
+    public void close() {
+      synchronized (HeapAdmission.this) {
+        long peak = peakHeap.getPeakBytes();
+        peakHeap.close();
+        if (recordPeak && output != null && peak > 0) {
+          history.put(output, peak);
+        }
+        running.remove(this);
+        used -= estimate;
+        HeapAdmission.this.notifyAll();
+      }
+    }
+  }
+
+  /** Returns the estimated heap needed to compile {@code inputBytes} of inputs into output. */
+  public long estimate(String output, long inputBytes) {
+    Long recorded = output == null ? null : history.get(output);
+    return recorded != null ? recorded : BASE_ESTIMATE + inputBytes * heapPerInputByte;
+  }
+
+  /** Waits until the compilation fits in the budget. */
+  public Admission admit(String output, long inputBytes) throws InterruptedException {
+    long estimate = estimate(output, inputBytes);
+    long start = System.nanoTime();
+    Admission admission = new Admission(output, estimate);
+    int queued;
+    synchronized (this) {
+      waiting.add(admission);
+      try {
+        while (waiting.peek() != admission || (!running.isEmpty() && used + estimate > budget)) {
+          wait();
+        }
+      } finally {
+        waiting.remove(admission);
+        notifyAll();
+      }
+      admission.peakHeap = PeakHeap.start();
+      running.add(admission);
+      used += estimate;
+      queued = waiting.size();
+    }
+    System.err.println(
+        "Admitted "
+            + tool
+            + " "
+            + output
+            + " after "
+            + (System.nanoTime() - start) / 1_000_000
+            + " ms: estimated "
+            + (estimate >> 20)
+            + " MB, "
+            + (getUsed() >> 20)
+            + " of "
+            + (budget >> 20)
+            + " MB heap budget in use, "
+            + queued
+            + " queued");
+    return admission;
+  }
+
+  /** Number of compilations waiting for admission. */
+  public synchronized int getQueueDepth() {
+    return waiting.size();
+  }
+
+  /** Sum of the estimates of the running compilations. */
+  public synchronized long getUsed() {
+    return used;
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the wrapper protocols and logs.
+ *
+ * <p>Objects are read as {@link Map}, arrays as {@link List}, numbers as {@link Long} or {@link
+ * Double}, and the remaining values as {@link String}, {@link Boolean} or null.
+ */
+public class Json {
+
+  private static final Object END_OF_INPUT = new Object();
+
+  private final PushbackReader reader;
+
+  public Json(Reader reader) {
+    this.reader = new PushbackReader(reader, 1);
+  }
+
+  /** Returns true if another value can be read, skipping any whitespace before it. */
+  public boolean hasNext() throws IOException {
+    int c = skipWhitespace();
+    if (c < 0) {
+      return false;
+    }
+    reader.unread(c);
+    return true;
+  }
+
+  /** Reads the next top-level value. */
+  public Object next() throws IOException {
+    Object value = readValue();
+    if (value == END_OF_INPUT) {
+      throw new IOException("Unexpected end of JSON input");
+    }
+    return value;
+  }
+
+  public static Object parse(String string) {
+    try {
+      return new Json(new StringReader(string)).next();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static String quote(String string) {
+    StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+      }
+    }
+    return builder.append('"').toString();
+  }
+
+  private int skipWhitespace() throws IOException {
+    int c;
+    do {
+      c = reader.read();
+    } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+    return c;
+  }
+
+  private Object readValue() throws IOException {
+    int c = skipWhitespace();
+    switch (c) {
+      case -1:
+        return END_OF_INPUT;
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        expect("rue");
+        return Boolean.TRUE;
+      case 'f':
+        expect("alse");
+        return Boolean.FALSE;
+      case 'n':
+        expect("ull");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber(c);
+        }
+        throw new IOException("Unexpected character in JSON input: " + (char) c);
+    }
+  }
+
+  private Map<String, Object> readObject() throws IOException {
+    Map<String, Object> object = new LinkedHashMap<>();
+    int c = skipWhitespace();
+    if (c == '}') {
+      return object;
+    }
+    while (true) {
+      if (c != '"') {
+        throw new IOException("Expected a JSON object key");
+      }
+      String key = readString();
+      if (skipWhitespace() != ':') {
+        throw new IOException("Expected ':' after JSON object key " + key);
+      }
+      object.put(key, next());
+      c = skipWhitespace();
+      if (c == '}') {
+        return object;
+      }
+      if (c != ',') {
+        throw new IOException("Expected ',' or '}' in JSON object");
+      }
+      c = skipWhitespace();
+    }
+  }
+
+  private List<Object> readArray() throws IOException {
+    List<Object> array = new ArrayList<>();
+    int c = skipWhitespace();
+    if (c == ']') {
+      return array;
+    }
+    reader.unread(c);
+    while (true) {
+      array.add(next());
+      c = skipWhitespace();
+      if (c == ']') {
+        return array;
+      }
+      if (c != ',') {
+        throw new IOException("Expected ',' or ']' in JSON array");
+      }
+    }
+  }
+
+  private String readString() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    while (true) {
+      int c = reader.read();
+      if (c < 0) {
+        throw new IOException("Unterminated JSON string");
+      }
+      if (c == '"') {
+        return builder.toString();
+      }
+      if (c != '\\') {
+        builder.append((char) c);
+        continue;
+      }
+      c = reader.read();
+      switch (c) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u':
+          {
+            char[] hex = new char[4];
+            for (int i = 0; i < hex.length; i++) {
+              hex[i] = (char) reader.read();
+            }
+            builder.append((char) Integer.parseInt(new String(hex), 16));
+            break;
+          }
+        default:
+          builder.append((char) c);
+      }
+    }
+  }
+
+  private Number readNumber(int first) throws IOException {
+    StringBuilder builder = new StringBuilder().append((char) first);
+    boolean isInteger = true;
+    while (true) {
+      int c = reader.read();
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+        builder.append((char) c);
+      } else if (c == '.' || c == 'e' || c == 'E') {
+        isInteger = false;
+        builder.append((char) c);
+      } else {
+        if (c >= 0) {
+          reader.unread(c);
+        }
+        break;
+      }
+    }
+    String number = builder.toString();
+    return isInteger ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+  }
+
+  private void expect(String rest) throws IOException {
+    for (int i = 0; i < rest.length(); i++) {
+      if (reader.read() != rest.charAt(i)) {
+        throw new IOException("Invalid JSON literal");
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Build-wide registry of the mapping files written by R8, so retrace can find the map of a stack
+ * trace without searching the output tree.
+ *
+ * <p>Each line of the registry is {@code <map id> TAB <map hash> TAB <absolute map path>},
+ * optionally followed by {@code TAB <absolute partition map path>} (see {@link
+ * PartitionMapArchive}). Updates are serialized with a lock on a sibling {@code .lock} file and
+ * replace the registry atomically, so readers do not need to lock.
+ */
+public class MapRegistry {
+
+  public static final String MAP_REGISTRY_FLAG = "--map-registry";
+
+  private static final String MAP_ID_HEADER_MARKER = "# pg_map_id: ";
+  private static final String MAP_HASH_HEADER_MARKER = "# pg_map_hash: SHA-256 ";
+
+  /** File locks are held by the process, so updates within the process are serialized here. */
+  private static final Object UPDATE_LOCK = new Object();
+
+  /** A registered mapping file. */
+  public static class Entry {
+    private final String id;
+    private final String hash;
+    private final Path path;
+    private final Path partitionMap;
+
+    Entry(String id, String hash, Path path, Path partitionMap) {
+      this.id = id;
+      this.hash = hash;
+      this.path = path;
+      this.partitionMap = partitionMap;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /** Partitioned form of the map, or null if it was not written. */
+    public Path getPartitionMap() {
+      return partitionMap;
+    }
+
+    private String toLine() {
+      return id + "\t" + hash + "\t" + path + (partitionMap == null ? "" : "\t" + partitionMap);
+    }
+  }
+
+  /**
+   * Records the id and hash from the header of the mapping file {@code map} in {@code registry},
+   * replacing any previous entry for the same path. Returns false if the map has no id header.
+   */
+  public static boolean register(Path registry, Path map, Path partitionMap) throws IOException {
+    Entry entry =
+        readHeader(
+            map.toAbsolutePath().normalize(),
+            partitionMap == null ? null : partitionMap.toAbsolutePath().normalize());
+    if (entry == null) {
+      return false;
+    }
+    Path lockFile = registry.resolveSibling(registry.getFileName() + ".lock");
+    synchronized (UPDATE_LOCK) {
+      Files.createDirectories(registry.toAbsolutePath().getParent());
+      try (FileChannel channel =
+              FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        // Released when the channel is closed.
+        channel.lock();
+        StringBuilder builder = new StringBuilder();
+        for (Entry existing : read(registry)) {
+          if (!existing.path.equals(entry.path)) {
+            builder.append(existing.toLine()).append('\n');
+          }
+        }
+        builder.append(entry.toLine()).append('\n');
+        AtomicFiles.write(registry, builder.toString().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return true;
+  }
+
+  /** Reads the entries of {@code registry}, or none if it does not exist. */
+  public static List<Entry> read(Path registry) throws IOException {
+    if (!Files.exists(registry)) {
+      return Collections.emptyList();
+    }
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(registry)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\t");
+        if (parts.length >= 3) {
+          Path partitionMap = parts.length > 3 ? Paths.get(parts[3]) : null;
+          entries.add(new Entry(parts[0], parts[1], Paths.get(parts[2]), partitionMap));
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static Entry readHeader(Path map, Path partitionMap) throws IOException {
+    String id = null;
+    String hash = null;
+    try (BufferedReader reader = GzipFiles.newBufferedReader(map)) {
+      String line;
+      while ((id == null || hash == null)
+          && (line = reader.readLine()) != null
+          && line.startsWith("#")) {
+        if (line.startsWith(MAP_ID_HEADER_MARKER)) {
+          id = line.substring(MAP_ID_HEADER_MARKER.length());
+        } else if (line.startsWith(MAP_HASH_HEADER_MARKER)) {
+          hash = line.substring(MAP_HASH_HEADER_MARKER.length());
+        }
+      }
+    }
+    return id == null || hash == null ? null : new Entry(id, hash, map, partitionMap);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Metrics of a wrapper invocation, appended as a JSON line to a log shared by a whole build.
+ *
+ * <p>Appends are serialized with a file lock, so concurrent actions can share the log. CPU time and
+ * GC time are those of the process, which in a persistent worker includes the requests running at
+ * the same time. The peak heap is only recorded when it is known, see {@link PeakHeap}.
+ */
+public class MetricsLog {
+
+  public static final String METRICS_LOG_FLAG = "--metrics-log";
+
+  /** File locks are held by the process, so appends within the process are serialized here. */
+  private static final Object APPEND_LOCK = new Object();
+
+  private final String tool;
+  private final long startTime = System.currentTimeMillis();
+  private final long startNanos = System.nanoTime();
+  private final long startCpuNanos = getProcessCpuNanos();
+  private final long startGcMillis = getGcMillis();
+  private final long startGcCount = getGcCount();
+  private Path output = null;
+  private final List<Path> inputs = new ArrayList<>();
+
+  public MetricsLog(String tool) {
+    this.tool = tool;
+  }
+
+  public void setOutput(Path output) {
+    this.output = output;
+  }
+
+  public void addInputs(Collection<Path> inputs) {
+    this.inputs.addAll(inputs);
+  }
+
+  /**
+   * Appends the record of the invocation to {@code log}, with {@code peakHeapBytes} unless it is
+   * negative.
+   */
+  public void append(Path log, boolean success, long peakHeapBytes) throws IOException {
+    long wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+    long cpuNanos = getProcessCpuNanos();
+    long cpuMillis =
+        cpuNanos < 0 || startCpuNanos < 0 ? -1 : (cpuNanos - startCpuNanos) / 1_000_000;
+    long inputBytes = 0;
+    for (Path input : inputs) {
+      inputBytes += size(input);
+    }
+    String record =
+        "{\"tool\":"
+            + Json.quote(tool)
+            + ",\"output\":"
+            + Json.quote(String.valueOf(output))
+            + ",\"success\":"
+            + success
+            + ",\"timestamp\":"
+            + startTime
+            + ",\"inputs\":"
+            + inputs.size()
+            + ",\"inputBytes\":"
+            + inputBytes
+            + ",\"outputBytes\":"
+            + (output == null ? 0 : size(output))
+            + ",\"wallMs\":"
+            + wallMillis
+            + ",\"cpuMs\":"
+            + cpuMillis
+            + ",\"gcMs\":"
+            + (getGcMillis() - startGcMillis)
+            + ",\"gcCount\":"
+            + (getGcCount() - startGcCount)
+            + (peakHeapBytes < 0 ? "" : ",\"peakHeapBytes\":" + peakHeapBytes)
+            + "}\n";
+    ByteBuffer bytes = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+    synchronized (APPEND_LOCK) {
+      try (FileChannel channel =
+              FileChannel.open(
+                  log,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.APPEND)) {
+        // Released when the channel is closed.
+        channel.lock();
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+    }
+  }
+
+  /** Size of a file, or of all files below a directory. Missing files have size zero. */
+  private static long size(Path path) throws IOException {
+    if (Files.isRegularFile(path)) {
+      return Files.size(path);
+    }
+    if (!Files.isDirectory(path)) {
+      return 0;
+    }
+    try (Stream<Path> files = Files.walk(path)) {
+      return files
+          .filter(Files::isRegularFile)
+          .mapToLong(
+              file -> {
+                try {
+                  return Files.size(file);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              })
+          .sum();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static long getProcessCpuNanos() {
+    OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+    if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static long getGcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionTime());
+    }
+    return total;
+  }
+
+  private static long getGcCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionCount());
+    }
+    return total;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.retrace.MappingPartition;
+import com.android.tools.r8.retrace.MappingPartitionMetadata;
+import com.android.tools.r8.retrace.PartitionMapConsumer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mapping file partitioned by R8 into one segment per obfuscated class, stored in a zip archive.
+ *
+ * <p>The archive has a {@code METADATA} entry with the partition metadata and the partitions
+ * grouped into a fixed number of buckets by the hash of their key, one entry {@code
+ * partitions/<bucket>} per non-empty bucket. This keeps the archive below the zip entry limit for
+ * any number of classes. The central directory is the index, so retrace only reads the buckets of
+ * the classes in a stack trace.
+ */
+public class PartitionMapArchive {
+
+  public static final String PARTITION_MAP_OUTPUT_FLAG = "--partition-map-output";
+
+  private static final String METADATA_ENTRY = "METADATA";
+  private static final String PARTITION_PREFIX = "partitions/";
+  private static final int BUCKETS = 4096;
+
+  private final ZipArchive archive;
+  private final ZipArchive.Entry metadata;
+  private final Map<Integer, ZipArchive.Entry> buckets = new HashMap<>();
+
+  private PartitionMapArchive(ZipArchive archive) {
+    this.archive = archive;
+    ZipArchive.Entry metadata = null;
+    for (ZipArchive.Entry entry : archive.getEntries()) {
+      if (entry.getName().equals(METADATA_ENTRY)) {
+        metadata = entry;
+      } else if (entry.getName().startsWith(PARTITION_PREFIX)) {
+        buckets.put(
+            Integer.parseInt(entry.getName().substring(PARTITION_PREFIX.length()), 16), entry);
+      }
+    }
+    if (metadata == null) {
+      throw new RuntimeException("No partition metadata in " + archive.getPath());
+    }
+    this.metadata = metadata;
+  }
+
+  public static PartitionMapArchive open(Path path) throws IOException {
+    return new PartitionMapArchive(ZipArchive.open(path));
+  }
+
+  private static int getBucket(String key) {
+    return Math.floorMod(key.hashCode(), BUCKETS);
+  }
+
+  public byte[] getMetadata() throws IOException {
+    return archive.read(metadata);
+  }
+
+  /** Returns the partition for {@code key}, or null if there is none. */
+  public byte[] getPartition(String key) throws IOException {
+    ZipArchive.Entry entry = buckets.get(getBucket(key));
+    if (entry == null) {
+      return null;
+    }
+    byte[] bucket = archive.read(entry);
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bucket));
+    while (input.available() > 0) {
+      String partitionKey = input.readUTF();
+      byte[] payload = new byte[input.readInt()];
+      input.readFully(payload);
+      if (partitionKey.equals(key)) {
+        return payload;
+      }
+    }
+    return null;
+  }
+
+  /** Returns a consumer writing the partitions R8 produces to an archive at {@code output}. */
+  public static Writer writer(Path output) {
+    return new Writer(output);
+  }
+
+  /**
+   * Collects the partitions into buckets and writes the archive when R8 is finished. Each bucket
+   * holds a sequence of the partition key, the payload size and the payload.
+   */
+  public static class Writer implements PartitionMapConsumer {
+    private final Path output;
+    private final Map<Integer, ByteArrayOutputStream> buckets = new TreeMap<>();
+    private byte[] metadata = null;
+
+    private Writer(Path output) {
+      this.output = output;
+    }
+
+    @Override
+    public synchronized void acceptMappingPartition(MappingPartition partition) {
+      ByteArrayOutputStream bucket =
+          buckets.computeIfAbsent(getBucket(partition.getKey()), k -> new ByteArrayOutputStream());
+      try {
+        DataOutputStream out = new DataOutputStream(bucket);
+        out.writeUTF(partition.getKey());
+        out.writeInt(partition.getPayload().length);
+        out.write(partition.getPayload());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public synchronized void acceptMappingPartitionMetadata(MappingPartitionMetadata metadata) {
+      this.metadata = metadata.getBytes();
+    }
+
+    @Override
+    public synchronized void finished(DiagnosticsHandler handler) {
+      if (metadata == null) {
+        throw new RuntimeException("No partition metadata for " + output);
+      }
+      try {
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try {
+          try (ZipArchiveWriter writer = new ZipArchiveWriter(temp)) {
+            write(writer, METADATA_ENTRY, metadata);
+            for (Map.Entry<Integer, ByteArrayOutputStream> bucket : buckets.entrySet()) {
+              write(
+                  writer,
+                  PARTITION_PREFIX + Integer.toHexString(bucket.getKey()),
+                  bucket.getValue().toByteArray());
+            }
+          }
+          AtomicFiles.move(temp, output);
+        } finally {
+          Files.deleteIfExists(temp);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static void write(ZipArchiveWriter writer, String name, byte[] data)
+        throws IOException {
+      writer.write(name, data, ZipArchive.DEFLATED, ZipArchiveWriter.DEFAULT_DOS_TIME);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures the peak heap of a compilation with the peak usage of the heap memory pools.
+ *
+ * <p>The pools are shared by the whole process, so a measurement resets their peaks only when it
+ * starts while no other measurement is running, and its peak is only known if no measurement of
+ * another thread overlapped it. Measurements started again on the same thread, e.g., for the
+ * metrics log of a compilation within its worker admission, share the outer measurement.
+ */
+public class PeakHeap {
+
+  private static final Set<Measurement> RUNNING = new HashSet<>();
+  private static final ThreadLocal<Measurement> CURRENT = new ThreadLocal<>();
+
+  private PeakHeap() {}
+
+  /** A running measurement, which ends when closed by all that started it. */
+  public static class Measurement implements AutoCloseable {
+    private boolean alone;
+    private int starts = 1;
+
+    private Measurement(boolean alone) {
+      this.alone = alone;
+    }
+
+    /** Returns the peak heap since the start, or -1 if another measurement overlapped it. */
+    public long getPeakBytes() {
+      synchronized (RUNNING) {
+        return alone ? getPoolPeakBytes() : -1;
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (RUNNING) {
+        if (--starts == 0) {
+          RUNNING.remove(this);
+          CURRENT.remove();
+        }
+      }
+    }
+  }
+
+  /** Starts a measurement on the current thread. */
+  public static Measurement start() {
+    synchronized (RUNNING) {
+      Measurement current = CURRENT.get();
+      if (current != null) {
+        current.starts++;
+        return current;
+      }
+      Measurement measurement = new Measurement(RUNNING.isEmpty());
+      if (measurement.alone) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          if (pool.getType() == MemoryType.HEAP) {
+            pool.resetPeakUsage();
+          }
+        }
+      } else {
+        for (Measurement other : RUNNING) {
+          other.alone = false;
+        }
+      }
+      RUNNING.add(measurement);
+      CURRENT.set(measurement);
+      return measurement;
+    }
+  }
+
+  private static long getPoolPeakBytes() {
+    long total = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        total += pool.getPeakUsage().getUsed();
+      }
+    }
+    return total;
+  }
+}
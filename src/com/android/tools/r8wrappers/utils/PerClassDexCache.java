@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DesugarGraphConsumer;
+import com.android.tools.r8.DexFilePerClassFileConsumer;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.GlobalSyntheticsResourceProvider;
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResource.Kind;
+import com.android.tools.r8.origin.Origin;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of per-class D8 output for incremental dexing.
+ *
+ * <p>Each program class is cached under the hash of its class file and the compilation
+ * configuration. Classes without a valid entry are compiled in intermediate per-class-file mode
+ * with the other program classes on the classpath, and all per-class dex is then merged into the
+ * final output. Desugaring can make the output of a class depend on other classes, e.g., on the
+ * default methods of its interfaces, so each entry also records the hashes of the program classes
+ * reported through the desugar graph and is only used while those are unchanged.
+ */
+public class PerClassDexCache {
+
+  /** Compiler options that the cached compilation does not support. */
+  public static final List<String> UNSUPPORTED_OPTIONS =
+      Arrays.asList(
+          "--main-dex-list",
+          "--main-dex-rules",
+          "--main-dex-list-output",
+          "--file-per-class",
+          "--file-per-class-file",
+          "--intermediate");
+
+  /** Creates a builder configured with the options of the original command line. */
+  public interface BuilderFactory {
+    D8Command.Builder create();
+  }
+
+  /** Runs the compiler on a fully configured builder. */
+  public interface Compiler {
+    void compile(D8Command.Builder builder) throws CompilationFailedException;
+  }
+
+  private static final String DEX_SUFFIX = ".dex";
+  private static final String DEPENDENCIES_SUFFIX = ".deps";
+  private static final String GLOBALS_SUFFIX = ".globals";
+
+  private final Path directory;
+  private final String configuration;
+  private int hits = 0;
+  private int misses = 0;
+
+  public PerClassDexCache(Path directory, String configuration) {
+    this.directory = directory;
+    this.configuration = configuration;
+  }
+
+  /**
+   * Returns true if the inputs are all archives of class files and no option needs the whole
+   * program. Dex entries of an input are compiled by the compiler itself, so such inputs are not
+   * supported.
+   */
+  public static boolean supports(CompilerArguments arguments) throws IOException {
+    for (String option : UNSUPPORTED_OPTIONS) {
+      if (arguments.hasOption(option)) {
+        return false;
+      }
+    }
+    for (Path input : arguments.getInputs()) {
+      if (!ClassFileInput.isArchive(input) || ClassFileInput.hasDexEntries(input)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  public void compile(List<ClassFileInput> classes, BuilderFactory factory, Compiler compiler)
+      throws CompilationFailedException, IOException {
+    Map<String, String> classHashes = new HashMap<>();
+    for (ClassFileInput clazz : classes) {
+      classHashes.put(clazz.getDescriptor(), ContentHash.of(clazz.getBytes()));
+    }
+    Map<String, byte[]> dex = new HashMap<>();
+    Map<String, byte[]> globals = new HashMap<>();
+    List<ClassFileInput> changed = new ArrayList<>();
+    for (ClassFileInput clazz : classes) {
+      String key = getKey(classHashes.get(clazz.getDescriptor()));
+      byte[] cached = lookup(key, classHashes);
+      if (cached == null) {
+        changed.add(clazz);
+        continue;
+      }
+      dex.put(clazz.getDescriptor(), cached);
+      Path globalsFile = getEntryFile(key, GLOBALS_SUFFIX);
+      if (Files.exists(globalsFile)) {
+        globals.put(clazz.getDescriptor(), Files.readAllBytes(globalsFile));
+      }
+    }
+    hits += classes.size() - changed.size();
+    misses += changed.size();
+    if (!changed.isEmpty()) {
+      compileChanged(classes, changed, classHashes, factory, compiler, dex, globals);
+    }
+    merge(classes, dex, globals, factory, compiler);
+  }
+
+  private void compileChanged(
+      List<ClassFileInput> classes,
+      List<ClassFileInput> changed,
+      Map<String, String> classHashes,
+      BuilderFactory factory,
+      Compiler compiler,
+      Map<String, byte[]> dex,
+      Map<String, byte[]> globals)
+      throws CompilationFailedException, IOException {
+    Set<String> changedDescriptors = new HashSet<>();
+    for (ClassFileInput clazz : changed) {
+      changedDescriptors.add(clazz.getDescriptor());
+    }
+    List<ClassFileInput> unchanged = new ArrayList<>();
+    Map<Origin, String> originToDescriptor = new HashMap<>();
+    for (ClassFileInput clazz : classes) {
+      originToDescriptor.put(clazz.getOrigin(), clazz.getDescriptor());
+      if (!changedDescriptors.contains(clazz.getDescriptor())) {
+        unchanged.add(clazz);
+      }
+    }
+    Map<String, byte[]> compiled = new ConcurrentHashMap<>();
+    Map<String, byte[]> compiledGlobals = new ConcurrentHashMap<>();
+    Map<String, Set<String>> dependencies = new ConcurrentHashMap<>();
+    boolean[] unattributedGlobals = {false};
+    D8Command.Builder builder = factory.create();
+    builder
+        .addProgramResourceProvider(ClassFileInput.programProvider(changed))
+        .addClasspathResourceProvider(ClassFileInput.classpathProvider(unchanged))
+        .setIntermediate(true)
+        .setProgramConsumer(
+            new DexFilePerClassFileConsumer() {
+              @Override
+              public void accept(
+                  String primaryClassDescriptor,
+                  ByteDataView data,
+                  Set<String> descriptors,
+                  DiagnosticsHandler handler) {
+                compiled.put(primaryClassDescriptor, data.copyByteData());
+              }
+
+              @Override
+              public void finished(DiagnosticsHandler handler) {}
+            })
+        .setGlobalSyntheticsConsumer(
+            (data, context, handler) -> {
+              if (context == null) {
+                unattributedGlobals[0] = true;
+                compiledGlobals.put("", data.copyByteData());
+              } else {
+                compiledGlobals.put(context.getDescriptor(), data.copyByteData());
+              }
+            })
+        .setDesugarGraphConsumer(
+            new DesugarGraphConsumer() {
+              @Override
+              public void accept(Origin dependent, Origin dependency) {
+                String dependentDescriptor = originToDescriptor.get(dependent);
+                String dependencyDescriptor = originToDescriptor.get(dependency);
+                // Dependencies outside the program are covered by the configuration hash.
+                if (dependentDescriptor != null && dependencyDescriptor != null) {
+                  dependencies
+                      .computeIfAbsent(dependentDescriptor, k -> ConcurrentHashMap.newKeySet())
+                      .add(dependencyDescriptor);
+                }
+              }
+
+              @Override
+              public void finished() {}
+            });
+    compiler.compile(builder);
+    for (ClassFileInput clazz : changed) {
+      String descriptor = clazz.getDescriptor();
+      byte[] bytes = compiled.get(descriptor);
+      if (bytes == null) {
+        throw new IOException("No per-class output for " + descriptor);
+      }
+      dex.put(descriptor, bytes);
+      byte[] classGlobals = compiledGlobals.get(descriptor);
+      if (classGlobals != null) {
+        globals.put(descriptor, classGlobals);
+      }
+      if (!unattributedGlobals[0]) {
+        store(
+            getKey(classHashes.get(descriptor)),
+            bytes,
+            classGlobals,
+            dependencies.getOrDefault(descriptor, Collections.emptySet()),
+            classHashes);
+      }
+    }
+    byte[] otherGlobals = compiledGlobals.get("");
+    if (otherGlobals != null) {
+      globals.put("", otherGlobals);
+    }
+  }
+
+  private void merge(
+      List<ClassFileInput> classes,
+      Map<String, byte[]> dex,
+      Map<String, byte[]> globals,
+      BuilderFactory factory,
+      Compiler compiler)
+      throws CompilationFailedException {
+    List<ProgramResource> resources = new ArrayList<>(classes.size());
+    for (ClassFileInput clazz : classes) {
+      resources.add(
+          ProgramResource.fromBytes(
+              clazz.getOrigin(), Kind.DEX, dex.get(clazz.getDescriptor()), null));
+    }
+    mergeIntermediateDex(resources, globals.values(), factory, compiler);
+  }
+
+  /** Compiles intermediate dex and the global synthetics of its compilation into the output. */
+  static void mergeIntermediateDex(
+      List<ProgramResource> dex,
+      Collection<byte[]> globals,
+      BuilderFactory factory,
+      Compiler compiler)
+      throws CompilationFailedException {
+    D8Command.Builder builder = factory.create();
+    builder.addProgramResourceProvider(() -> dex);
+    for (byte[] bytes : globals) {
+      builder.addGlobalSyntheticsResourceProviders(
+          new GlobalSyntheticsResourceProvider() {
+            @Override
+            public Origin getOrigin() {
+              return Origin.unknown();
+            }
+
+            @Override
+            public InputStream getByteStream() {
+              return new ByteArrayInputStream(bytes);
+            }
+          });
+    }
+    compiler.compile(builder);
+  }
+
+  private String getKey(String classHash) {
+    return new ContentHash().add(configuration).add(classHash).hash();
+  }
+
+  private Path getEntryFile(String key, String suffix) {
+    return directory.resolve(key.substring(0, 2)).resolve(key + suffix);
+  }
+
+  /** Returns the cached dex for {@code key} if present and its dependencies are unchanged. */
+  private byte[] lookup(String key, Map<String, String> classHashes) throws IOException {
+    try {
+      for (String line : Files.readAllLines(getEntryFile(key, DEPENDENCIES_SUFFIX))) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        int space = line.indexOf(' ');
+        String hash = classHashes.get(line.substring(0, space));
+        if (!line.substring(space + 1).equals(hash)) {
+          return null;
+        }
+      }
+      return Files.readAllBytes(getEntryFile(key, DEX_SUFFIX));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private void store(
+      String key,
+      byte[] dex,
+      byte[] globals,
+      Set<String> dependencies,
+      Map<String, String> classHashes)
+      throws IOException {
+    StringBuilder builder = new StringBuilder();
+    for (String dependency : new TreeSet<>(dependencies)) {
+      builder.append(dependency).append(' ').append(classHashes.get(dependency)).append('\n');
+    }
+    // The dependencies are written first and the dex last, so an entry is only found once complete.
+    byte[] dependencyLines = builder.toString().getBytes(StandardCharsets.UTF_8);
+    AtomicFiles.write(getEntryFile(key, DEPENDENCIES_SUFFIX), dependencyLines);
+    Path globalsFile = getEntryFile(key, GLOBALS_SUFFIX);
+    if (globals != null) {
+      AtomicFiles.write(globalsFile, globals);
+    } else {
+      Files.deleteIfExists(globalsFile);
+    }
+    AtomicFiles.write(getEntryFile(key, DEX_SUFFIX), dex);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bazel persistent worker loop using the JSON worker protocol.
+ *
+ * <p>Requests with a zero request id are singleplex and run one at a time on the reading thread.
+ * Requests with a non-zero id are multiplex and run concurrently, each with its own captured
+ * output. Responses are written to the original stdout, so everything else printed to stdout while
+ * the worker is running is redirected to stderr.
+ *
+ * <p>A singleplex worker exits after a request if the heap stays above {@link
+ * #MEMORY_PRESSURE_RATIO} of the maximum heap after a collection, and Bazel starts a fresh worker
+ * for the next request. A multiplex worker may already have been sent further requests at any
+ * point, so it never exits on its own.
+ *
+ * <p>Cancellation is not supported: a compilation cannot be interrupted, so actions must not set
+ * the execution requirement "supports-worker-cancellation".
+ */
+public class PersistentWorker {
+
+  public static final String PERSISTENT_WORKER_FLAG = "--persistent_worker";
+
+  private static final double MEMORY_PRESSURE_RATIO = 0.8;
+
+  /** A single compilation run on behalf of a work request. */
+  public interface Action {
+
+    /**
+     * Runs the action with the request arguments and returns the exit code. All output for the
+     * request must be printed to {@code output}.
+     */
+    int run(String[] args, PrintStream output) throws Exception;
+  }
+
+  public static boolean isPersistentWorker(String[] args) {
+    for (String arg : args) {
+      if (arg.equals(PERSISTENT_WORKER_FLAG)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private final Action action;
+  private final Writer responses;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private volatile boolean recycle = false;
+
+  private PersistentWorker(Action action, Writer responses) {
+    this.action = action;
+    this.responses = responses;
+  }
+
+  public static void run(Action action) throws IOException, InterruptedException {
+    PrintStream stdout = System.out;
+    System.setOut(System.err);
+    try {
+      run(
+          action,
+          new InputStreamReader(System.in, StandardCharsets.UTF_8),
+          new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+    } finally {
+      System.setOut(stdout);
+    }
+  }
+
+  static void run(Action action, Reader requests, Writer responses)
+      throws IOException, InterruptedException {
+    PersistentWorker worker = new PersistentWorker(action, responses);
+    try {
+      worker.processRequests(new Json(requests));
+    } finally {
+      worker.executor.shutdown();
+      worker.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void processRequests(Json requests) throws IOException {
+    while (!recycle && requests.hasNext()) {
+      Map<?, ?> request = (Map<?, ?>) requests.next();
+      if (Boolean.TRUE.equals(request.get("cancel"))) {
+        // Cancellation is not advertised, so such requests are unexpected. The request itself is
+        // still answered when it completes.
+        continue;
+      }
+      int requestId = getInt(request, "requestId");
+      List<String> arguments = new ArrayList<>();
+      Object requestArguments = request.get("arguments");
+      if (requestArguments != null) {
+        for (Object argument : (List<?>) requestArguments) {
+          arguments.add((String) argument);
+        }
+      }
+      String[] args = arguments.toArray(new String[0]);
+      if (requestId == 0) {
+        processRequest(requestId, args);
+      } else {
+        executor.execute(() -> processRequest(requestId, args));
+      }
+    }
+  }
+
+  private void processRequest(int requestId, String[] args) {
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    int exitCode;
+    try (PrintStream output = new PrintStream(captured, true, "UTF-8")) {
+      try {
+        exitCode = action.run(args, output);
+      } catch (Throwable e) {
+        e.printStackTrace(output);
+        exitCode = 1;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    // Decide on recycling before responding so that the worker never reads a request that it will
+    // not process. Only singleplex requests run on the reading thread, see the class comment.
+    if (requestId == 0) {
+      checkMemoryPressure();
+    }
+    try {
+      String output = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+      writeResponse(requestId, exitCode, output);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private synchronized void writeResponse(int requestId, int exitCode, String output)
+      throws IOException {
+    responses.write(
+        "{\"exitCode\":"
+            + exitCode
+            + ",\"output\":"
+            + Json.quote(output)
+            + ",\"requestId\":"
+            + requestId
+            + "}\n");
+    responses.flush();
+  }
+
+  private void checkMemoryPressure() {
+    if (isUnderMemoryPressure()) {
+      System.gc();
+      if (isUnderMemoryPressure()) {
+        System.err.println("Recycling worker due to memory pressure.");
+        recycle = true;
+      }
+    }
+  }
+
+  private static boolean isUnderMemoryPressure() {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    return heap.getMax() > 0 && heap.getUsed() > heap.getMax() * MEMORY_PRESSURE_RATIO;
+  }
+
+  private static int getInt(Map<?, ?> request, String key) {
+    Object value = request.get(key);
+    return value == null ? 0 : ((Number) value).intValue();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.AndroidResourceConsumer;
+import com.android.tools.r8.AndroidResourceOutput;
+import com.android.tools.r8.DiagnosticsHandler;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Resource archive consumer that copies the entries left unchanged by the resource shrinker.
+ *
+ * <p>Like {@link com.android.tools.r8.ArchiveProtoAndroidResourceConsumer}, the output contains
+ * exactly the resources passed to {@link #accept}, in that order, each with the compression method
+ * of the entry in the input archive. Each resource is written when it is accepted. Resources with
+ * the same content as the input entry, typically all but the resource table, are copied
+ * compressed, so only the modified entries are deflated again.
+ */
+public class RawCopyResourceConsumer implements AndroidResourceConsumer {
+
+  private final Path outputPath;
+  private final Path inputPath;
+  private ZipArchive input = null;
+  private final Map<String, ZipArchive.Entry> inputEntries = new HashMap<>();
+  private ZipArchiveWriter writer = null;
+  private int copied = 0;
+  private int rewritten = 0;
+
+  public RawCopyResourceConsumer(Path outputPath, Path inputPath) {
+    this.outputPath = outputPath;
+    this.inputPath = inputPath;
+  }
+
+  @Override
+  public synchronized void accept(AndroidResourceOutput output, DiagnosticsHandler handler) {
+    try {
+      open();
+      write(output.getPath().location(), output.getByteDataView().copyByteData());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public synchronized void finished(DiagnosticsHandler handler) {
+    try {
+      open();
+      writer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      writer = null;
+    }
+  }
+
+  /** Closes and deletes the output if the compilation failed before finishing it. */
+  public synchronized void discard() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+      Files.deleteIfExists(outputPath);
+    } catch (IOException e) {
+      // The file is left behind, e.g., if the directory is no longer writable.
+    } finally {
+      writer = null;
+    }
+  }
+
+  private void open() throws IOException {
+    if (input != null) {
+      return;
+    }
+    input = ZipArchive.open(inputPath);
+    for (ZipArchive.Entry entry : input.getEntries()) {
+      inputEntries.putIfAbsent(entry.getName(), entry);
+    }
+    writer = new ZipArchiveWriter(outputPath);
+  }
+
+  private void write(String name, byte[] data) throws IOException {
+    ZipArchive.Entry entry = inputEntries.get(name);
+    if (entry == null) {
+      writer.write(name, data, ZipArchive.DEFLATED, ZipArchiveWriter.DEFAULT_DOS_TIME);
+      rewritten++;
+    } else if (isUnchanged(entry, data)) {
+      writer.copy(input, entry);
+      copied++;
+    } else {
+      int method = entry.getMethod() == ZipArchive.STORED ? ZipArchive.STORED : ZipArchive.DEFLATED;
+      writer.write(name, data, method, entry.getDosTime());
+      rewritten++;
+    }
+  }
+
+  private boolean isUnchanged(ZipArchive.Entry entry, byte[] data) throws IOException {
+    if (entry.getSize() != data.length
+        || (entry.getMethod() != ZipArchive.STORED && entry.getMethod() != ZipArchive.DEFLATED)) {
+      return false;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    // The checksum rules out most changes without inflating the input entry.
+    return (int) crc.getValue() == entry.getCrc() && Arrays.equals(input.read(entry), data);
+  }
+
+  /** Number of entries copied without recompression. */
+  public int getCopied() {
+    return copied;
+  }
+
+  /** Number of entries compressed again. */
+  public int getRewritten() {
+    return rewritten;
+  }
+}
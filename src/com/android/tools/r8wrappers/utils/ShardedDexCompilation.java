@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DexIndexedConsumer;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResource.Kind;
+import com.android.tools.r8.ResourceException;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * D8 compilation of a large program in shards, so the class files and the compilation of the
+ * program are never all in the heap at once.
+ *
+ * <p>The class file entries of the program archives are indexed by their central directory, and
+ * grouped by package into shards of about {@code shardSize} bytes of class files, where a package
+ * larger than that is split. Each shard reads its own class files and compiles them to
+ * intermediate dex, with the other program classes on the classpath, read from the archives only
+ * when the compiler needs them. The intermediate dex of a shard is written to a temporary
+ * directory, and the intermediate dex of all shards and their global synthetics are then merged
+ * into the output, as with {@link PerClassDexCache}.
+ *
+ * <p>The peak heap is therefore the larger of the compilation of {@code threads} shards and the
+ * final merge, which holds the dex of the whole program, but not its class files or the compiler
+ * state of desugaring and code conversion.
+ */
+public class ShardedDexCompilation {
+
+  public static final String SHARD_SIZE_FLAG = "--shard-size";
+  public static final String SHARD_THREADS_FLAG = "--shard-threads";
+
+  private final long shardSize;
+  private final int threads;
+  private int shardCount = 0;
+
+  /** Compiles up to {@code threads} shards of about {@code shardSize} bytes at a time. */
+  public ShardedDexCompilation(long shardSize, int threads) {
+    this.shardSize = shardSize;
+    this.threads = Math.max(1, threads);
+  }
+
+  /** Returns true for the same compilations as {@link PerClassDexCache#supports}. */
+  public static boolean supports(CompilerArguments arguments) throws IOException {
+    return PerClassDexCache.supports(arguments);
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /** A class file entry of a program archive, read when needed. */
+  private static class ClassEntry {
+    final ZipFile zipFile;
+    final ZipEntry entry;
+    final String descriptor;
+    final Origin origin;
+
+    ClassEntry(ZipFile zipFile, ZipEntry entry, Origin archiveOrigin) {
+      this.zipFile = zipFile;
+      this.entry = entry;
+      this.descriptor = ClassFileInput.getDescriptorForEntry(entry.getName());
+      this.origin = new ArchiveEntryOrigin(entry.getName(), archiveOrigin);
+    }
+
+    long getSize() {
+      return Math.max(0, entry.getSize());
+    }
+
+    ProgramResource read() {
+      try (InputStream stream = zipFile.getInputStream(entry)) {
+        return ProgramResource.fromBytes(
+            origin, Kind.CF, stream.readAllBytes(), Collections.singleton(descriptor));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            "Failed to read " + entry.getName() + " from " + zipFile.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Compiles the class files of the program {@code archives}, in archive order. The archives must
+   * not have dex entries, see {@link #supports}.
+   */
+  public void compile(
+      List<Path> archives,
+      PerClassDexCache.BuilderFactory factory,
+      PerClassDexCache.Compiler compiler)
+      throws CompilationFailedException, IOException {
+    List<ZipFile> zipFiles = new ArrayList<>(archives.size());
+    Path directory = Files.createTempDirectory("d8-shards");
+    try {
+      List<ClassEntry> classes = new ArrayList<>();
+      for (Path archive : archives) {
+        ZipFile zipFile = new ZipFile(archive.toFile());
+        zipFiles.add(zipFile);
+        Origin archiveOrigin = new PathOrigin(archive);
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          if (ClassFileInput.isClassFileEntry(entry.getName())) {
+            classes.add(new ClassEntry(zipFile, entry, archiveOrigin));
+          } else if (ClassFileInput.isDexEntry(entry.getName())) {
+            // Rejected by supports(), as the shards would silently drop them.
+            throw new RuntimeException(
+                "Sharded compilation does not support dex entries, found "
+                    + entry.getName()
+                    + " in "
+                    + archive);
+          }
+        }
+      }
+      List<List<ClassEntry>> shards = partition(classes);
+      shardCount = shards.size();
+      List<ProgramResource> dex = new ArrayList<>();
+      List<byte[]> globals = new ArrayList<>();
+      for (Shard shard : compileShards(shards, classes, directory, factory, compiler)) {
+        for (Path file : shard.dexFiles) {
+          dex.add(ProgramResource.fromFile(Kind.DEX, file));
+        }
+        // Global synthetics are few and small, so they are read into memory.
+        for (Path file : shard.globalsFiles) {
+          globals.add(Files.readAllBytes(file));
+        }
+      }
+      PerClassDexCache.mergeIntermediateDex(dex, globals, factory, compiler);
+    } finally {
+      for (ZipFile zipFile : zipFiles) {
+        zipFile.close();
+      }
+      deleteRecursively(directory);
+    }
+  }
+
+  /** Compiles the shards and returns them in shard order once all are compiled. */
+  private List<Shard> compileShards(
+      List<List<ClassEntry>> shards,
+      List<ClassEntry> program,
+      Path directory,
+      PerClassDexCache.BuilderFactory factory,
+      PerClassDexCache.Compiler compiler)
+      throws CompilationFailedException, IOException {
+    List<Shard> compiled = new ArrayList<>(shards.size());
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards.size())));
+    try {
+      List<Future<Shard>> futures = new ArrayList<>(shards.size());
+      for (int i = 0; i < shards.size(); i++) {
+        Shard shard = new Shard(getShardDirectory(directory, i), shards.get(i));
+        futures.add(
+            executor.submit(
+                () -> {
+                  shard.compile(program, factory, compiler);
+                  return shard;
+                }));
+      }
+      // Merge in shard order, independent of which shard finished first.
+      for (Future<Shard> future : futures) {
+        compiled.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompilationFailedException) {
+        throw (CompilationFailedException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+    return compiled;
+  }
+
+  private static Path getShardDirectory(Path directory, int index) {
+    return directory.resolve(String.format("shard-%06d", index));
+  }
+
+  /** Groups the classes by package into shards, in package order. */
+  private List<List<ClassEntry>> partition(List<ClassEntry> classes) {
+    Map<String, List<ClassEntry>> packages = new TreeMap<>();
+    for (ClassEntry clazz : classes) {
+      String descriptor = clazz.descriptor;
+      packages
+          .computeIfAbsent(
+              descriptor.substring(0, Math.max(1, descriptor.lastIndexOf('/'))),
+              k -> new ArrayList<>())
+          .add(clazz);
+    }
+    List<List<ClassEntry>> shards = new ArrayList<>();
+    List<ClassEntry> shard = new ArrayList<>();
+    long size = 0;
+    for (List<ClassEntry> packageClasses : packages.values()) {
+      long packageSize = 0;
+      for (ClassEntry clazz : packageClasses) {
+        packageSize += clazz.getSize();
+      }
+      // Keep a package in one shard unless it does not fit in an empty one.
+      if (!shard.isEmpty() && size + packageSize > shardSize) {
+        shards.add(shard);
+        shard = new ArrayList<>();
+        size = 0;
+      }
+      for (ClassEntry clazz : packageClasses) {
+        if (!shard.isEmpty() && size + clazz.getSize() > shardSize) {
+          shards.add(shard);
+          shard = new ArrayList<>();
+          size = 0;
+        }
+        shard.add(clazz);
+        size += clazz.getSize();
+      }
+    }
+    if (!shard.isEmpty()) {
+      shards.add(shard);
+    }
+    return shards;
+  }
+
+  /** A shard, whose intermediate dex and global synthetics are written to its directory. */
+  private static class Shard {
+    final Path directory;
+    final List<ClassEntry> classes;
+    final List<Path> dexFiles = new ArrayList<>();
+    final List<Path> globalsFiles = new ArrayList<>();
+
+    Shard(Path directory, List<ClassEntry> classes) {
+      this.directory = directory;
+      this.classes = classes;
+    }
+
+    void compile(
+        List<ClassEntry> program,
+        PerClassDexCache.BuilderFactory factory,
+        PerClassDexCache.Compiler compiler)
+        throws CompilationFailedException, IOException {
+      Files.createDirectories(directory);
+      Set<ClassEntry> shardClasses = new HashSet<>(classes);
+      Map<String, ClassEntry> classpath = new HashMap<>();
+      for (ClassEntry clazz : program) {
+        if (!shardClasses.contains(clazz)) {
+          classpath.putIfAbsent(clazz.descriptor, clazz);
+        }
+      }
+      Map<Integer, Path> files = new TreeMap<>();
+      D8Command.Builder builder = factory.create();
+      builder
+          .addProgramResourceProvider(
+              () -> {
+                List<ProgramResource> resources = new ArrayList<>(classes.size());
+                for (ClassEntry clazz : classes) {
+                  try {
+                    resources.add(clazz.read());
+                  } catch (UncheckedIOException e) {
+                    throw new ResourceException(clazz.origin, e.getCause());
+                  }
+                }
+                return resources;
+              })
+          .addClasspathResourceProvider(
+              new ClassFileResourceProvider() {
+                @Override
+                public Set<String> getClassDescriptors() {
+                  return classpath.keySet();
+                }
+
+                @Override
+                public ProgramResource getProgramResource(String descriptor) {
+                  ClassEntry clazz = classpath.get(descriptor);
+                  return clazz == null ? null : clazz.read();
+                }
+              })
+          .setIntermediate(true)
+          .setProgramConsumer(
+              new DexIndexedConsumer() {
+                @Override
+                public synchronized void accept(
+                    int fileIndex,
+                    ByteDataView data,
+                    Set<String> descriptors,
+                    DiagnosticsHandler handler) {
+                  Path file = directory.resolve(String.format("classes-%06d.dex", fileIndex));
+                  try {
+                    Files.write(file, data.copyByteData());
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                  files.put(fileIndex, file);
+                }
+
+                @Override
+                public void finished(DiagnosticsHandler handler) {}
+              })
+          .setGlobalSyntheticsConsumer(
+              (data, context, handler) -> {
+                synchronized (globalsFiles) {
+                  Path file =
+                      directory.resolve(String.format("globals-%06d", globalsFiles.size()));
+                  try {
+                    Files.write(file, data.copyByteData());
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                  globalsFiles.add(file);
+                }
+              });
+      compiler.compile(builder);
+      dexFiles.addAll(files.values());
+    }
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.UTF8TextInputStream;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8.profile.art.ArtProfileClassRuleInfo;
+import com.android.tools.r8.profile.art.ArtProfileMethodRuleInfo;
+import com.android.tools.r8.profile.art.ArtProfileRulePredicate;
+import com.android.tools.r8.references.ClassReference;
+import com.android.tools.r8.references.MethodReference;
+import com.android.tools.r8.startup.StartupProfileBuilder;
+import com.android.tools.r8.startup.StartupProfileProvider;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Startup profile in the human-readable ART profile format, for the compilers to lay out the
+ * startup classes and methods first and keep them in the primary dex.
+ *
+ * <p>The rules are recorded as the compiler parses them, so {@link #getReport} can tell how many of
+ * the profiled classes are in the program.
+ */
+public class StartupProfile implements StartupProfileProvider {
+
+  public static final String STARTUP_PROFILE_FLAG = "--startup-profile";
+
+  private final Path path;
+  private final Set<String> classRules = ConcurrentHashMap.newKeySet();
+  private final Set<String> methodRules = ConcurrentHashMap.newKeySet();
+  private final Set<String> classes = ConcurrentHashMap.newKeySet();
+  private volatile boolean read = false;
+
+  public StartupProfile(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public Origin getOrigin() {
+    return new PathOrigin(path);
+  }
+
+  @Override
+  public void getStartupProfile(StartupProfileBuilder builder) {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(path);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read startup profile " + path, e);
+    }
+    read = true;
+    builder.addHumanReadableArtProfile(
+        new UTF8TextInputStream(new ByteArrayInputStream(bytes)),
+        parser ->
+            parser.setRulePredicate(
+                new ArtProfileRulePredicate() {
+                  @Override
+                  public boolean testClassRule(
+                      ClassReference classReference, ArtProfileClassRuleInfo info) {
+                    addClassRule(classReference.getDescriptor());
+                    return true;
+                  }
+
+                  @Override
+                  public boolean testMethodRule(
+                      MethodReference methodReference, ArtProfileMethodRuleInfo info) {
+                    addMethodRule(
+                        methodReference.getHolderClass().getDescriptor(),
+                        methodReference.getMethodName() + methodReference.getMethodDescriptor());
+                    return true;
+                  }
+                }));
+  }
+
+  void addClassRule(String descriptor) {
+    read = true;
+    classRules.add(descriptor);
+    classes.add(descriptor);
+  }
+
+  void addMethodRule(String holder, String method) {
+    read = true;
+    methodRules.add(holder + "->" + method);
+    classes.add(holder);
+  }
+
+  /**
+   * Returns the number of rules of the profile and how many of the classes they refer to are among
+   * the class files of the {@code programArchives}.
+   */
+  public String getReport(Collection<Path> programArchives) throws IOException {
+    if (!read) {
+      // E.g., the outputs were restored from a cache.
+      return "Startup profile " + path + " was not read by the compiler.";
+    }
+    Set<String> programClasses = new HashSet<>();
+    for (Path archive : programArchives) {
+      for (ZipArchive.Entry entry : ZipArchive.open(archive).getEntries()) {
+        if (ClassFileInput.isClassFileEntry(entry.getName())) {
+          programClasses.add(ClassFileInput.getDescriptorForEntry(entry.getName()));
+        }
+      }
+    }
+    int matched = 0;
+    for (String descriptor : classes) {
+      if (programClasses.contains(descriptor)) {
+        matched++;
+      }
+    }
+    return "Startup profile "
+        + path
+        + ": "
+        + classRules.size()
+        + " class rules and "
+        + methodRules.size()
+        + " method rules, "
+        + matched
+        + " of their "
+        + classes.size()
+        + " classes are in the program"
+        + (classes.isEmpty() ? "." : String.format(" (%.1f%%).", 100.0 * matched / classes.size()));
+  }
+}
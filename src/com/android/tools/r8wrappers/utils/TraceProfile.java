@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Profile of a wrapper invocation in the Chrome trace event format, which can be loaded into
+ * chrome://tracing or Perfetto.
+ *
+ * <p>Timestamps are wall-clock microseconds, so the profiles of all actions of a build can be
+ * combined into a single timeline. Besides the wrapper phases, the profile contains the garbage
+ * collections during the invocation and the heap usage before and after each of them. The heap
+ * usage right before a collection is the high-water mark since the previous one.
+ */
+public class TraceProfile {
+
+  public static final String PROFILE_OUTPUT_FLAG = "--profile-output";
+
+  /** Thread id used for garbage collection events, which are not tied to a wrapper thread. */
+  private static final long GC_THREAD_ID = 0;
+
+  private final long pid = ProcessHandle.current().pid();
+  private final long startTime = now();
+  private final List<String> events = new ArrayList<>();
+  private final List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+  private final Set<String> heapPools = new HashSet<>();
+  private final NotificationListener gcListener = this::onGarbageCollection;
+  private long heapHighWaterMark = 0;
+  private String name;
+
+  public TraceProfile(String name) {
+    this.name = name;
+  }
+
+  /**
+   * A phase of the invocation, recorded when closed. Phases are opened in try-with-resources
+   * statements that never reference them, so the enclosing methods suppress the "try" lint.
+   */
+  public class Phase implements AutoCloseable {
+    private final String name;
+    private final long start = now();
+
+    private Phase(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void close() {
+      complete(name, start);
+    }
+  }
+
+  /** Names the process in the trace viewer, e.g., after the output of the action. */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public static long now() {
+    return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+  }
+
+  /** Time the profile was created, at the start of the invocation. */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public Phase begin(String name) {
+    return new Phase(name);
+  }
+
+  /** Records the phase {@code name} on the current thread from {@code start} until now. */
+  public void complete(String name, long start) {
+    addEvent(
+        "{\"name\":"
+            + Json.quote(name)
+            + ",\"cat\":\"wrapper\",\"ph\":\"X\",\"ts\":"
+            + start
+            + ",\"dur\":"
+            + (now() - start)
+            + ",\"pid\":"
+            + pid
+            + ",\"tid\":"
+            + Thread.currentThread().getId()
+            + "}");
+    recordHeapUsage(now(), currentHeapUsage());
+  }
+
+  /** Starts recording the garbage collections of the process until the profile is written. */
+  public void recordGarbageCollections() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool.getName());
+      }
+    }
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+        collectors.add(collector);
+      }
+    }
+  }
+
+  private void onGarbageCollection(Notification notification, Object handback) {
+    if (!notification
+        .getType()
+        .equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+      return;
+    }
+    GarbageCollectionNotificationInfo info =
+        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+    GcInfo gcInfo = info.getGcInfo();
+    // GC times are relative to the start of the JVM.
+    long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime() * 1000;
+    long start = jvmStart + gcInfo.getStartTime() * 1000;
+    long end = jvmStart + gcInfo.getEndTime() * 1000;
+    if (end < startTime) {
+      return;
+    }
+    addEvent(
+        "{\"name\":"
+            + Json.quote(info.getGcName())
+            + ",\"cat\":\"gc\",\"ph\":\"X\",\"ts\":"
+            + start
+            + ",\"dur\":"
+            + (end - start)
+            + ",\"pid\":"
+            + pid
+            + ",\"tid\":"
+            + GC_THREAD_ID
+            + ",\"args\":{\"action\":"
+            + Json.quote(info.getGcAction())
+            + ",\"cause\":"
+            + Json.quote(info.getGcCause())
+            + "}}");
+    recordHeapUsage(start, heapUsage(gcInfo.getMemoryUsageBeforeGc()));
+    recordHeapUsage(end, heapUsage(gcInfo.getMemoryUsageAfterGc()));
+  }
+
+  private long heapUsage(Map<String, MemoryUsage> pools) {
+    long used = 0;
+    for (Map.Entry<String, MemoryUsage> pool : pools.entrySet()) {
+      if (heapPools.isEmpty() || heapPools.contains(pool.getKey())) {
+        used += pool.getValue().getUsed();
+      }
+    }
+    return used;
+  }
+
+  private static long currentHeapUsage() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private void recordHeapUsage(long timestamp, long used) {
+    synchronized (events) {
+      heapHighWaterMark = Math.max(heapHighWaterMark, used);
+    }
+    addEvent(
+        "{\"name\":\"heap\",\"ph\":\"C\",\"ts\":"
+            + timestamp
+            + ",\"pid\":"
+            + pid
+            + ",\"args\":{\"used MB\":"
+            + (used >> 20)
+            + "}}");
+  }
+
+  private void addEvent(String event) {
+    synchronized (events) {
+      events.add(event);
+    }
+  }
+
+  /** Stops recording and writes the profile to {@code output}. */
+  public void write(Path output) throws IOException {
+    for (GarbageCollectorMXBean collector : collectors) {
+      try {
+        ((NotificationEmitter) collector).removeNotificationListener(gcListener);
+      } catch (ListenerNotFoundException e) {
+        // Already removed.
+      }
+    }
+    collectors.clear();
+    recordHeapUsage(now(), currentHeapUsage());
+    StringBuilder builder = new StringBuilder("{\"traceEvents\":[\n");
+    builder
+        .append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":")
+        .append(pid)
+        .append(",\"args\":{\"name\":")
+        .append(Json.quote(name))
+        .append("}},\n")
+        .append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":")
+        .append(pid)
+        .append(",\"tid\":")
+        .append(GC_THREAD_ID)
+        .append(",\"args\":{\"name\":\"GC\"}}");
+    synchronized (events) {
+      for (String event : events) {
+        builder.append(",\n").append(event);
+      }
+      builder
+          .append("\n],\"displayTimeUnit\":\"ms\",\"otherData\":{\"heap high-water MB\":")
+          .append(heapHighWaterMark >> 20)
+          .append("}}\n");
+    }
+    AtomicFiles.write(output, builder.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
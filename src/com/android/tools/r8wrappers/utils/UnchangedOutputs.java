@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import com.android.tools.r8.BaseCompilerCommand;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Code output that is left untouched when the compiler reproduces it byte for byte.
+ *
+ * <p>The compiler writes to a temporary sibling of the output, which then replaces the output file
+ * by file where the content differs. Unchanged outputs keep their timestamps, so ninja with restat
+ * can skip the actions depending on them.
+ */
+public class UnchangedOutputs implements AutoCloseable {
+
+  public static final String PRESERVE_UNCHANGED_OUTPUTS_FLAG = "--preserve-unchanged-outputs";
+
+  private final Path output;
+  private final Path temp;
+
+  private UnchangedOutputs(Path output, Path temp) {
+    this.output = output;
+    this.temp = temp;
+  }
+
+  /** Redirects the code output of {@code builder} to a temporary location. */
+  public static UnchangedOutputs redirect(BaseCompilerCommand.Builder<?, ?> builder)
+      throws IOException {
+    Path output = builder.getOutputPath().toAbsolutePath();
+    Path parent = output.getParent();
+    Files.createDirectories(parent);
+    String name = output.getFileName().toString();
+    Path temp;
+    if (ClassFileInput.isArchive(output)) {
+      // Keep the extension, which determines the output format.
+      temp = Files.createTempFile(parent, name + ".", name.substring(name.lastIndexOf('.')));
+    } else {
+      temp = Files.createTempDirectory(parent, name + ".");
+    }
+    builder.setOutput(temp, builder.getOutputMode());
+    return new UnchangedOutputs(output, temp);
+  }
+
+  public Path getRedirectedOutput() {
+    return temp;
+  }
+
+  /** Moves the outputs that differ from the existing ones into place. */
+  public void commit() throws IOException {
+    if (!Files.isDirectory(temp)) {
+      moveIfChanged(temp, output);
+      return;
+    }
+    Files.createDirectories(output);
+    try (Stream<Path> files = Files.walk(temp)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        moveIfChanged(file, output.resolve(temp.relativize(file).toString()));
+      }
+    }
+    // Like the compiler, remove stale dex files from a previous output with more dex files.
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(output, "classes*.dex")) {
+      for (Path file : stream) {
+        if (Files.notExists(temp.resolve(file.getFileName().toString()))) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private static void moveIfChanged(Path source, Path target) throws IOException {
+    if (hasSameContent(source, target)) {
+      Files.delete(source);
+      return;
+    }
+    Files.createDirectories(target.toAbsolutePath().getParent());
+    AtomicFiles.move(source, target);
+  }
+
+  /** Returns true if {@code target} exists with the same content as {@code source}. */
+  public static boolean hasSameContent(Path source, Path target) throws IOException {
+    if (!Files.isRegularFile(target) || Files.size(source) != Files.size(target)) {
+      return false;
+    }
+    return Arrays.equals(Files.readAllBytes(source), Files.readAllBytes(target));
+  }
+
+  /** Deletes whatever is left of the temporary output, e.g., after a failed compilation. */
+  @Override
+  public void close() throws IOException {
+    if (Files.notExists(temp)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(temp)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
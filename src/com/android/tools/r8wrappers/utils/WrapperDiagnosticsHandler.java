@@ -8,12 +8,57 @@ import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.DiagnosticsLevel;
 import com.android.tools.r8.errors.DuplicateTypeInProgramAndLibraryDiagnostic;
 import com.android.tools.r8.errors.UnsupportedMainDexListUsageDiagnostic;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.position.Position;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Diagnostics handler of the wrappers.
+ *
+ * <p>Diagnostics are printed on a separate thread, so the compiler threads reporting them do not
+ * wait for the console. Errors are always printed, but at most {@link #DIAGNOSTICS_LIMIT_FLAG}
+ * warnings and infos of each kind, and {@link #finish} summarizes the rest by kind and origin. All
+ * diagnostics are written to the optional {@link #DIAGNOSTICS_REPORT_FLAG} file, as JSON lines.
+ */
 public class WrapperDiagnosticsHandler implements DiagnosticsHandler {
 
+  public static final String DIAGNOSTICS_REPORT_FLAG = "--diagnostics-report";
+  public static final String DIAGNOSTICS_LIMIT_FLAG = "--diagnostics-limit";
+
+  public static final int DEFAULT_DIAGNOSTICS_LIMIT = 100;
+
   private boolean printInfoDiagnostics = false;
   private boolean warnOnUnsupportedMainDexList = false;
   private DiagnosticsLevel duplicateTypesLevel = DiagnosticsLevel.INFO;
+  private PrintStream output = null;
+  private Path report = null;
+  private int limit = DEFAULT_DIAGNOSTICS_LIMIT;
+
+  // Library origins of duplicate types by whether the duplicates are benign.
+  private final Map<Origin, Boolean> benignDuplicateTypeOrigins = new ConcurrentHashMap<>();
+
+  private final DiagnosticsRules rules = new DiagnosticsRules();
+  private final Map<Origin, List<String>> originSegments = new ConcurrentHashMap<>();
+
+  // Only accessed by the printer thread, or under the lock of this handler once it is finished.
+  private final Map<String, DiagnosticKind> kinds = new TreeMap<>();
+  private final StringBuilder reportLines = new StringBuilder();
+
+  private ExecutorService printer = null;
+  private boolean finished = false;
 
   public void setPrintInfoDiagnostics(boolean value) {
     printInfoDiagnostics = value;
@@ -27,18 +72,236 @@ public class WrapperDiagnosticsHandler implements DiagnosticsHandler {
     duplicateTypesLevel = level;
   }
 
+  /** Print all diagnostics to {@code output} instead of the default stdout/stderr streams. */
+  public void setOutput(PrintStream output) {
+    this.output = output;
+  }
+
+  /** Adds the level overrides of a {@link DiagnosticsRules} file. */
+  public void addRules(Path file) throws IOException {
+    rules.parse(file);
+  }
+
+  /** Writes all diagnostics to {@code report}, also those not printed. */
+  public void setReport(Path report) {
+    this.report = report;
+  }
+
+  /** Prints at most {@code limit} warnings and at most {@code limit} infos of each kind. */
+  public void setLimit(int limit) {
+    this.limit = limit;
+  }
+
+  @Override
+  public void error(Diagnostic error) {
+    submit(
+        () -> {
+          record(error, "Error");
+          if (output == null) {
+            DiagnosticsHandler.super.error(error);
+          } else {
+            printDiagnostic(error, "Error");
+          }
+        });
+  }
+
+  @Override
+  public void warning(Diagnostic warning) {
+    submit(
+        () -> {
+          if (record(warning, "Warning")) {
+            if (output == null) {
+              DiagnosticsHandler.super.warning(warning);
+            } else {
+              printDiagnostic(warning, "Warning");
+            }
+          }
+        });
+  }
+
+  @Override
+  public void info(Diagnostic info) {
+    submit(
+        () -> {
+          if (record(info, "Info")) {
+            if (output == null) {
+              DiagnosticsHandler.super.info(info);
+            } else {
+              printDiagnostic(info, "Info");
+            }
+          }
+        });
+  }
+
+  /** Reports a wrapper warning through this handler. */
+  public void warning(String message) {
+    warning(new WrapperDiagnostic(message));
+  }
+
+  /** Reports wrapper information through this handler, if info diagnostics are printed. */
+  public void info(String message) {
+    if (printInfoDiagnostics) {
+      info(new WrapperDiagnostic(message));
+    }
+  }
+
+  /**
+   * Prints the remaining diagnostics and the summary of those not printed, and writes the report.
+   * Diagnostics reported after this are handled on the reporting thread, under the lock of this
+   * handler.
+   */
+  public void finish() throws IOException {
+    ExecutorService printer;
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      printer = this.printer;
+    }
+    if (printer != null) {
+      printer.shutdown();
+      try {
+        while (!printer.awaitTermination(1, TimeUnit.MINUTES)) {}
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+    String lines;
+    synchronized (this) {
+      for (DiagnosticKind kind : kinds.values()) {
+        if (kind.count > kind.printed) {
+          printSummary(kind);
+        }
+      }
+      lines = reportLines.toString();
+    }
+    if (report != null) {
+      AtomicFiles.write(report, lines.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private synchronized void submit(Runnable task) {
+    if (finished) {
+      // Run under the lock, so the task does not race with the summary of finish().
+      task.run();
+      return;
+    }
+    if (printer == null) {
+      printer =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "diagnostics-printer");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    printer.execute(task);
+  }
+
+  /** Aggregates and reports the diagnostic and returns whether to print it. */
+  private boolean record(Diagnostic diagnostic, String level) {
+    String name = diagnostic.getClass().getSimpleName();
+    DiagnosticKind kind =
+        kinds.computeIfAbsent(level + " " + name, k -> new DiagnosticKind(level, name));
+    String origin = diagnostic.getOrigin().toString();
+    kind.count++;
+    kind.origins.merge(origin, 1, Integer::sum);
+    boolean print = level.equals("Error") || kind.printed < limit;
+    if (print) {
+      kind.printed++;
+    }
+    if (report != null) {
+      reportLines
+          .append("{\"level\":")
+          .append(Json.quote(level))
+          .append(",\"kind\":")
+          .append(Json.quote(name))
+          .append(",\"origin\":")
+          .append(Json.quote(origin))
+          .append(",\"position\":")
+          .append(Json.quote(diagnostic.getPosition().getDescription()))
+          .append(",\"message\":")
+          .append(Json.quote(diagnostic.getDiagnosticMessage()))
+          .append(",\"printed\":")
+          .append(print)
+          .append("}\n");
+    }
+    return print;
+  }
+
+  private void printSummary(DiagnosticKind kind) {
+    String mostFrequentOrigin = null;
+    int mostFrequentCount = 0;
+    for (Map.Entry<String, Integer> entry : kind.origins.entrySet()) {
+      if (entry.getValue() > mostFrequentCount) {
+        mostFrequentOrigin = entry.getKey();
+        mostFrequentCount = entry.getValue();
+      }
+    }
+    String message =
+        (kind.count - kind.printed)
+            + " more "
+            + kind.name
+            + " diagnostics not printed, "
+            + kind.count
+            + " in total from "
+            + kind.origins.size()
+            + " origins, most in "
+            + mostFrequentOrigin
+            + " ("
+            + mostFrequentCount
+            + ")"
+            + (report == null ? "." : ", see " + report + ".");
+    PrintStream stream = output;
+    if (stream == null) {
+      stream = kind.level.equals("Info") ? System.out : System.err;
+    }
+    stream.println(kind.level + ": " + message);
+  }
+
+  private void printDiagnostic(Diagnostic diagnostic, String kind) {
+    StringBuilder builder = new StringBuilder(kind);
+    if (diagnostic.getOrigin() != Origin.unknown()) {
+      builder.append(" in ").append(diagnostic.getOrigin());
+      if (diagnostic.getPosition() != Position.UNKNOWN) {
+        builder.append(":").append(diagnostic.getPosition().getDescription());
+      }
+      builder.append(":").append(System.lineSeparator());
+    } else {
+      builder.append(": ");
+    }
+    builder.append(diagnostic.getDiagnosticMessage());
+    output.println(builder);
+  }
+
   @Override
   public DiagnosticsLevel modifyDiagnosticsLevel(DiagnosticsLevel level, Diagnostic diagnostic) {
     if (warnOnUnsupportedMainDexList
         && diagnostic instanceof UnsupportedMainDexListUsageDiagnostic) {
       return DiagnosticsLevel.WARNING;
     }
+    String type = null;
+    List<String> segments;
     if (diagnostic instanceof DuplicateTypeInProgramAndLibraryDiagnostic) {
+      DuplicateTypeInProgramAndLibraryDiagnostic duplicate =
+          (DuplicateTypeInProgramAndLibraryDiagnostic) diagnostic;
       level = duplicateTypesLevel;
-      if ((level == DiagnosticsLevel.WARNING || level == DiagnosticsLevel.ERROR) &&
-          isBenignDuplicateType((DuplicateTypeInProgramAndLibraryDiagnostic) diagnostic)) {
+      if ((level == DiagnosticsLevel.WARNING || level == DiagnosticsLevel.ERROR)
+          && isBenignDuplicateType(duplicate)) {
         level = DiagnosticsLevel.INFO;
       }
+      type = duplicate.getType().getTypeName();
+      segments = new ArrayList<>(getOriginSegments(duplicate.getLibraryOrigin()));
+      segments.addAll(getOriginSegments(diagnostic.getOrigin()));
+    } else {
+      segments = getOriginSegments(diagnostic.getOrigin());
+    }
+    DiagnosticsLevel override =
+        rules.classify(diagnostic.getClass().getSimpleName(), type, segments);
+    if (override != null) {
+      level = override;
     }
     if (!printInfoDiagnostics && level == DiagnosticsLevel.INFO) {
       return DiagnosticsLevel.NONE;
@@ -46,14 +309,59 @@ public class WrapperDiagnosticsHandler implements DiagnosticsHandler {
     return level;
   }
 
-  private static boolean isBenignDuplicateType(
-      DuplicateTypeInProgramAndLibraryDiagnostic diagnostic) {
+  private static class WrapperDiagnostic implements Diagnostic {
+    private final String message;
+
+    WrapperDiagnostic(String message) {
+      this.message = message;
+    }
+
+    @Override
+    public Origin getOrigin() {
+      return Origin.unknown();
+    }
+
+    @Override
+    public Position getPosition() {
+      return Position.UNKNOWN;
+    }
+
+    @Override
+    public String getDiagnosticMessage() {
+      return message;
+    }
+  }
+
+  /** Count of the diagnostics of one kind and level, by origin. */
+  private static class DiagnosticKind {
+    final String level;
+    final String name;
+    final Map<String, Integer> origins = new HashMap<>();
+    int count = 0;
+    int printed = 0;
+
+    DiagnosticKind(String level, String name) {
+      this.level = level;
+      this.name = name;
+    }
+  }
+
+  private boolean isBenignDuplicateType(DuplicateTypeInProgramAndLibraryDiagnostic diagnostic) {
     // The Jetpack annotation lib statically links duplicate Kotlin deps. As the annotation lib is
     // unused at runtime, treat it as benign for now.
     // TODO(b/326561340): Resolve this static duplication in Jetpack module updates.
     final boolean isKotlinAnnotationDuplicate =
-        diagnostic.getType().getTypeName().startsWith("kotlin") &&
-        diagnostic.getLibraryOrigin().toString().contains("androidx.annotation_annotation");
+        diagnostic.getType().getTypeName().startsWith("kotlin")
+            && benignDuplicateTypeOrigins.computeIfAbsent(
+                diagnostic.getLibraryOrigin(),
+                origin -> origin.toString().contains("androidx.annotation_annotation"));
     return isKotlinAnnotationDuplicate;
   }
+
+  private List<String> getOriginSegments(Origin origin) {
+    return origin == null
+        ? Collections.emptyList()
+        : originSegments.computeIfAbsent(
+            origin, o -> DiagnosticsRules.getOriginSegments(o.toString()));
+  }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Memory-mapped zip archive giving access to the central directory and the raw entry data.
+ *
+ * <p>Unlike {@link java.util.zip.ZipFile}, entries can be selected on the central directory alone
+ * and their compressed data copied without inflating it. Zip64 archives are not supported.
+ */
+public class ZipArchive {
+
+  static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  static final int LOCAL_HEADER_SIZE = 30;
+  static final int CENTRAL_HEADER_SIZE = 46;
+  static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  public static final int STORED = 0;
+  public static final int DEFLATED = 8;
+
+  /** An entry of the central directory. */
+  public static class Entry {
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final int dosTime;
+    private final int crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    Entry(
+        String name,
+        int flags,
+        int method,
+        int dosTime,
+        int crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getFlags() {
+      return flags;
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    /** Modification time and date in MS-DOS format, the date in the upper 16 bits. */
+    public int getDosTime() {
+      return dosTime;
+    }
+
+    public int getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+
+  private final Path path;
+  private final ByteBuffer buffer;
+  private final List<Entry> entries;
+
+  private ZipArchive(Path path, ByteBuffer buffer, List<Entry> entries) {
+    this.path = path;
+    this.buffer = buffer;
+    this.entries = entries;
+  }
+
+  public static ZipArchive open(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Archive too large: " + path);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return new ZipArchive(path, buffer, readCentralDirectory(path, buffer));
+  }
+
+  private static List<Entry> readCentralDirectory(Path path, ByteBuffer buffer)
+      throws IOException {
+    int end = findEndOfCentralDirectory(path, buffer);
+    int count = Short.toUnsignedInt(buffer.getShort(end + 10));
+    long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+    if (count == 0xffff || offset == 0xffffffffL) {
+      throw new IOException("Zip64 archives are not supported: " + path);
+    }
+    List<Entry> entries = new ArrayList<>(count);
+    int position = (int) offset;
+    for (int i = 0; i < count; i++) {
+      if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+        throw new IOException("Invalid central directory in " + path);
+      }
+      int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+      int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+      int dosTime = buffer.getInt(position + 12);
+      int crc = buffer.getInt(position + 16);
+      long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+      long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+      int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+      int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+      int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+      if (compressedSize == 0xffffffffL
+          || size == 0xffffffffL
+          || localHeaderOffset == 0xffffffffL) {
+        throw new IOException("Zip64 archives are not supported: " + path);
+      }
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuffer = buffer.duplicate();
+      nameBuffer.position(position + CENTRAL_HEADER_SIZE);
+      nameBuffer.get(name);
+      entries.add(
+          new Entry(
+              new String(name, StandardCharsets.UTF_8),
+              flags,
+              method,
+              dosTime,
+              crc,
+              compressedSize,
+              size,
+              localHeaderOffset));
+      position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  private static int findEndOfCentralDirectory(Path path, ByteBuffer buffer) throws IOException {
+    // The end record is followed by a comment of at most 64K.
+    int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    int first = Math.max(0, last - 0xffff);
+    for (int position = last; position >= first; position--) {
+      if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return position;
+      }
+    }
+    throw new IOException("Not a zip archive: " + path);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /** Entries in central directory order. */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /** Reads the uncompressed data of {@code entry}. */
+  public byte[] read(Entry entry) throws IOException {
+    ByteBuffer data = getRawData(entry);
+    byte[] bytes = new byte[(int) entry.size];
+    if (entry.method == STORED) {
+      data.get(bytes);
+      return bytes;
+    }
+    if (entry.method != DEFLATED) {
+      throw new IOException("Unsupported compression method for " + entry.name + " in " + path);
+    }
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(data);
+      int offset = 0;
+      while (offset < bytes.length && !inflater.finished()) {
+        int read = inflater.inflate(bytes, offset, bytes.length - offset);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        offset += read;
+      }
+      if (offset != bytes.length) {
+        throw new IOException("Truncated entry " + entry.name + " in " + path);
+      }
+      return bytes;
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid entry " + entry.name + " in " + path, e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /** Returns a view of the data of {@code entry} as stored in the archive. */
+  public ByteBuffer getRawData(Entry entry) throws IOException {
+    int header = (int) entry.localHeaderOffset;
+    if (buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+      throw new IOException("Invalid local header for " + entry.name + " in " + path);
+    }
+    int nameLength = Short.toUnsignedInt(buffer.getShort(header + 26));
+    int extraLength = Short.toUnsignedInt(buffer.getShort(header + 28));
+    ByteBuffer data = buffer.duplicate();
+    data.position(header + LOCAL_HEADER_SIZE + nameLength + extraLength);
+    data.limit(data.position() + (int) entry.compressedSize);
+    return data.slice();
+  }
+}
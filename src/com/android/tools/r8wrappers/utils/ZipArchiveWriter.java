@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.r8wrappers.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zip archive writer that can copy entries from a {@link ZipArchive} without recompressing them.
+ *
+ * <p>Entries are written with their sizes in the local header, so no data descriptors are used.
+ * Zip64 archives are not supported.
+ */
+public class ZipArchiveWriter implements Closeable {
+
+  /** MS-DOS time of 1980-01-01 00:00, the earliest representable time. */
+  public static final int DEFAULT_DOS_TIME = (1 << 21) | (1 << 16);
+
+  private static final int VERSION = 20;
+  private static final int ENCRYPTED_FLAG = 1;
+  private static final int UTF8_FLAG = 1 << 11;
+
+  private final FileChannel channel;
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private int entryCount = 0;
+
+  public ZipArchiveWriter(Path path) throws IOException {
+    channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /** Copies {@code entry} of {@code archive} as is. */
+  public void copy(ZipArchive archive, ZipArchive.Entry entry) throws IOException {
+    if ((entry.getFlags() & ENCRYPTED_FLAG) != 0) {
+      throw new IOException("Encrypted entries are not supported: " + entry.getName());
+    }
+    writeEntry(
+        entry.getName(),
+        entry.getMethod(),
+        entry.getDosTime(),
+        entry.getCrc(),
+        entry.getSize(),
+        archive.getRawData(entry));
+  }
+
+  /** Writes {@code data} compressed with {@code method}, either stored or deflated. */
+  public void write(String name, byte[] data, int method, int dosTime) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    byte[] stored = data;
+    if (method == ZipArchive.DEFLATED) {
+      stored = deflate(data);
+    } else if (method != ZipArchive.STORED) {
+      throw new IOException("Unsupported compression method " + method + " for " + name);
+    }
+    writeEntry(name, method, dosTime, (int) crc.getValue(), data.length, ByteBuffer.wrap(stored));
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+      byte[] chunk = new byte[64 * 1024];
+      while (!deflater.finished()) {
+        out.write(chunk, 0, deflater.deflate(chunk));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeEntry(
+      String name, int method, int dosTime, int crc, long size, ByteBuffer data)
+      throws IOException {
+    long offset = channel.position();
+    if (offset >= 0xffffffffL || entryCount == 0xffff) {
+      throw new IOException("Archive too large for a non-Zip64 archive at " + name);
+    }
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    int compressedSize = data.remaining();
+    ByteBuffer local = newBuffer(ZipArchive.LOCAL_HEADER_SIZE + nameBytes.length);
+    local
+        .putInt(ZipArchive.LOCAL_HEADER_SIGNATURE)
+        .putShort((short) VERSION)
+        .putShort((short) UTF8_FLAG)
+        .putShort((short) method)
+        .putInt(dosTime)
+        .putInt(crc)
+        .putInt(compressedSize)
+        .putInt((int) size)
+        .putShort((short) nameBytes.length)
+        .putShort((short) 0)
+        .put(nameBytes);
+    local.flip();
+    writeFully(local);
+    writeFully(data);
+    ByteBuffer central = newBuffer(ZipArchive.CENTRAL_HEADER_SIZE + nameBytes.length);
+    central
+        .putInt(ZipArchive.CENTRAL_HEADER_SIGNATURE)
+        .putShort((short) VERSION)
+        .putShort((short) VERSION)
+        .putShort((short) UTF8_FLAG)
+        .putShort((short) method)
+        .putInt(dosTime)
+        .putInt(crc)
+        .putInt(compressedSize)
+        .putInt((int) size)
+        .putShort((short) nameBytes.length)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putInt(0)
+        .putInt((int) offset)
+        .put(nameBytes);
+    centralDirectory.write(central.array());
+    entryCount++;
+  }
+
+  private static ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      long offset = channel.position();
+      byte[] directory = centralDirectory.toByteArray();
+      if (offset >= 0xffffffffL) {
+        throw new IOException("Archive too large for a non-Zip64 archive");
+      }
+      writeFully(ByteBuffer.wrap(directory));
+      ByteBuffer end = newBuffer(ZipArchive.END_OF_CENTRAL_DIRECTORY_SIZE);
+      end.putInt(ZipArchive.END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+          .putShort((short) 0)
+          .putShort((short) 0)
+          .putShort((short) entryCount)
+          .putShort((short) entryCount)
+          .putInt(directory.length)
+          .putInt((int) offset)
+          .putShort((short) 0);
+      end.flip();
+      writeFully(end);
+    } finally {
+      channel.close();
+    }
+  }
+}
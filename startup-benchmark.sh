@@ -0,0 +1,53 @@
+#!/bin/bash
+#
+# Copyright (C) 2026 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Reports the startup time of a launcher (d8, r8 or retrace) with and without its AppCDS archive.
+# Usage: startup-benchmark.sh <launcher> [<runs>] [<launcher arguments>...]
+# The launcher arguments default to --version.
+
+if [ $# -lt 1 ]; then
+    echo "Usage: `basename "$0"` <launcher> [<runs>] [<launcher arguments>...]"
+    exit 1
+fi
+launcher="$1"
+runs="${2:-10}"
+shift 2 2>/dev/null || shift
+if [ $# -eq 0 ]; then
+    set -- --version
+fi
+
+# Prints the mean wall time in milliseconds of the runs.
+measure() {
+    local total=0
+    for ((i = 0; i < runs; i++)); do
+        local start=`date +%s%N`
+        "$launcher" "$@" >/dev/null 2>&1
+        local end=`date +%s%N`
+        total=$((total + (end - start) / 1000000))
+    done
+    echo $((total / runs))
+}
+
+without=`R8_CDS_DIR= measure "$@"`
+# Use the archives in R8_CDS_DIR, or in a new directory that is removed afterwards.
+if [ -z "${R8_CDS_DIR}" ]; then
+    export R8_CDS_DIR=`mktemp -d`
+    trap 'rm -rf "${R8_CDS_DIR}"' EXIT
+fi
+# The first run creates the archive, so it is not measured.
+"$launcher" "$@" >/dev/null 2>&1
+with=`measure "$@"`
+echo "$launcher $*: ${without} ms without AppCDS, ${with} ms with AppCDS (mean of $runs runs)"
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.extractmarker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.OutputMode;
+import com.android.tools.r8wrappers.utils.Json;
+import com.android.tools.r8wrappers.utils.TestFiles;
+import com.android.tools.r8wrappers.utils.ZipArchive;
+import com.android.tools.r8wrappers.utils.ZipArchiveWriter;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchExtractMarkerTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("batch-extract-marker-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private List<Map<?, ?>> run(Path... paths) throws Exception {
+    Path report = directory.resolve("report.jsonl");
+    List<String> args =
+        new ArrayList<>(List.of("--batch", "--json", "--output", report.toString()));
+    for (Path path : paths) {
+      args.add(path.toString());
+    }
+    BatchExtractMarker.main(args.toArray(new String[0]));
+    List<Map<?, ?>> results = new ArrayList<>();
+    for (String line : Files.readAllLines(report)) {
+      results.add((Map<?, ?>) Json.parse(line));
+    }
+    return results;
+  }
+
+  @Test
+  public void reportsFilesThatAreNotDex() throws Exception {
+    Path input = Files.createDirectories(directory.resolve("input"));
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(input.resolve("app.apk"))) {
+      writer.write("AndroidManifest.xml", new byte[] {1}, ZipArchive.DEFLATED, 0);
+      byte[] notDex = "not dex".getBytes(StandardCharsets.UTF_8);
+      writer.write("classes.dex", notDex, ZipArchive.DEFLATED, 0);
+    }
+    Files.write(input.resolve("bad.dex"), new byte[] {'d', 'e', 'x'});
+    Files.write(input.resolve("broken.jar"), new byte[] {1, 2, 3});
+    Files.write(input.resolve("notes.txt"), new byte[] {'d', 'e', 'x', '\n'});
+
+    List<Map<?, ?>> results = run(input);
+    assertEquals(3, results.size());
+    assertEquals(input.resolve("app.apk").toString(), results.get(0).get("path"));
+    assertEquals("classes.dex", results.get(0).get("entry"));
+    assertEquals("not a dex file", results.get(0).get("error"));
+    assertEquals(input.resolve("bad.dex").toString(), results.get(1).get("path"));
+    assertEquals("not a dex file", results.get(1).get("error"));
+    assertEquals(input.resolve("broken.jar").toString(), results.get(2).get("path"));
+    assertTrue(results.get(2).containsKey("error"));
+    assertFalse(results.get(2).containsKey("entry"));
+  }
+
+  @Test
+  public void extractsMarkersOfDexInArchives() throws Exception {
+    Path classes = directory.resolve("classes.jar");
+    String entry = TestFiles.class.getName().replace('.', '/') + ".class";
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(classes));
+        InputStream in = TestFiles.class.getResourceAsStream("/" + entry)) {
+      out.putNextEntry(new ZipEntry(entry));
+      out.write(in.readAllBytes());
+    }
+    Path dex = directory.resolve("dex.jar");
+    D8.run(
+        D8Command.builder()
+            .addProgramFiles(classes)
+            .setMinApiLevel(21)
+            .setOutput(dex, OutputMode.DexIndexed)
+            .build());
+
+    List<Map<?, ?>> results = run(dex);
+    assertEquals(1, results.size());
+    assertEquals("classes.dex", results.get(0).get("entry"));
+    assertFalse(results.get(0).containsKey("error"));
+    List<?> markers = (List<?>) results.get(0).get("markers");
+    assertEquals(1, markers.size());
+    Map<?, ?> marker = (Map<?, ?>) markers.get(0);
+    assertEquals("D8", marker.get("tool"));
+    assertEquals(21L, marker.get("minApi"));
+  }
+}
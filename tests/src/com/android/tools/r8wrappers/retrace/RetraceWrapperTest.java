@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.retrace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import com.android.tools.r8wrappers.utils.GzipFiles;
+import com.android.tools.r8wrappers.utils.MapRegistry;
+import com.android.tools.r8wrappers.utils.TestFiles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetraceWrapperTest {
+
+  private static final String HEADER =
+      "# compiler: R8\n# pg_map_id: 1234567\n# pg_map_hash: SHA-256 abcdef\n";
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("retrace-wrapper-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    RetraceWrapper.RETRACERS.clear();
+    TestFiles.deleteRecursively(directory);
+  }
+
+  @Test
+  public void readsHeaderOfPlainAndCompressedMaps() throws Exception {
+    Path plain = Files.writeString(directory.resolve("plain.txt"), HEADER + "a -> b:\n");
+    Path compressed = directory.resolve("compressed.txt");
+    GzipFiles.GzipStringConsumer consumer = GzipFiles.stringConsumer(compressed);
+    consumer.accept(HEADER + "a -> b:\n", null);
+    consumer.finished(null);
+
+    RetraceWrapper.MapInfo expected = new RetraceWrapper.MapInfo("1234567", "abcdef");
+    assertEquals(expected, RetraceWrapper.readMapHeaderInfo(plain));
+    assertEquals(expected, RetraceWrapper.readMapHeaderInfo(compressed));
+  }
+
+  @Test
+  public void mapWithoutHeaderHasNoInfo() throws Exception {
+    Path map =
+        Files.write(directory.resolve("map.txt"), Arrays.asList("# pg_map_id: 1", "a -> b:"));
+    assertNull(RetraceWrapper.readMapHeaderInfo(map));
+  }
+
+  @Test
+  public void takesMapsFromRegistry() throws Exception {
+    Path registry = directory.resolve("maps.tsv");
+    Path map = Files.writeString(directory.resolve("a.map"), HEADER + "a -> b:\n");
+    Path other =
+        Files.writeString(
+            directory.resolve("b.map"),
+            "# pg_map_id: 7654321\n# pg_map_hash: SHA-256 fedcba\nc -> d:\n");
+    Path partitionMap = directory.resolve("b.map.zip");
+    MapRegistry.register(registry, map, null);
+    MapRegistry.register(registry, other, partitionMap);
+
+    RetraceWrapper.populateLocalMappingFileMap(Collections.emptyList(), false, registry);
+    assertEquals(
+        map.toAbsolutePath().toString(),
+        RetraceWrapper.RETRACERS.get("1234567").getMapLocation());
+    assertEquals(
+        partitionMap.toAbsolutePath().toString(),
+        RetraceWrapper.RETRACERS.get("7654321").getMapLocation());
+  }
+
+  @Test
+  public void missingRegistryIsAnError() {
+    Path registry = directory.resolve("missing.tsv");
+    assertThrows(
+        RuntimeException.class,
+        () -> RetraceWrapper.populateLocalMappingFileMap(Collections.emptyList(), false, registry));
+  }
+}
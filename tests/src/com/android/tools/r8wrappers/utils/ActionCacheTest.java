@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import com.android.tools.r8.InputDependencyGraphConsumer;
+import com.android.tools.r8.origin.Origin;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActionCacheTest {
+
+  private static final List<String> OUTPUT_FLAGS = Arrays.asList("--output", "--pg-map-output");
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("action-cache-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path write(String name, String content) throws Exception {
+    Path file = directory.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static List<String> names(Path directory) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private String key(String... args) throws Exception {
+    return ActionCache.computeActionKey(args, OUTPUT_FLAGS);
+  }
+
+  @Test
+  public void outputLocationsDoNotChangeTheKey() throws Exception {
+    String input = write("in.jar", "input").toString();
+    assertEquals(key("--output", "a", input), key("--output", "b", input));
+    assertNotEquals(key("--output", "a", input), key("--output", "a", "--release", input));
+  }
+
+  @Test
+  public void inputFileContentChangesTheKey() throws Exception {
+    Path input = write("in.jar", "input");
+    String before = key(input.toString());
+    write("in.jar", "changed input");
+    assertNotEquals(before, key(input.toString()));
+  }
+
+  @Test
+  public void inputDirectoryContentChangesTheKey() throws Exception {
+    Path lib = write("lib/a/A.class", "A").getParent().getParent();
+    String before = key("--lib", lib.toString());
+    write("lib/a/B.class", "B");
+    String added = key("--lib", lib.toString());
+    assertNotEquals(before, added);
+    write("lib/a/B.class", "changed B");
+    assertNotEquals(added, key("--lib", lib.toString()));
+  }
+
+  @Test
+  public void restoresStoredOutputsAndDependencies() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    Path rules = write("rules.pro", "-keep class A");
+    Path code = write("out/classes.dex", "dex");
+    Path map = directory.resolve("out/map.txt");
+    Map<String, Path> outputs = new TreeMap<>();
+    outputs.put("code", code);
+    outputs.put("pg-map-output", map);
+
+    ActionCache miss = new ActionCache(cacheDirectory, Long.MAX_VALUE, "action");
+    assertNull(miss.restore(outputs));
+    InputDependencyGraphConsumer dependencies = miss.recordDependencies(null);
+    dependencies.accept(Origin.unknown(), rules);
+    // The map was not produced by the compilation.
+    miss.store(outputs);
+
+    write("out/classes.dex", "stale");
+    write("out/map.txt", "stale");
+    ActionCache hit = new ActionCache(cacheDirectory, Long.MAX_VALUE, "action");
+    assertEquals(Collections.singletonList(rules), hit.restore(outputs));
+    assertEquals("dex", new String(Files.readAllBytes(code), StandardCharsets.UTF_8));
+    assertFalse(Files.exists(map));
+
+    write("rules.pro", "-keep class B");
+    assertNull(new ActionCache(cacheDirectory, Long.MAX_VALUE, "action").restore(outputs));
+  }
+
+  @Test
+  public void restoredDirectoryHasOnlyTheStoredDexFiles() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    Path code = directory.resolve("out");
+    write("out/classes.dex", "first");
+    write("out/classes2.dex", "second");
+    Map<String, Path> outputs = Collections.singletonMap("code", code);
+    ActionCache miss = new ActionCache(cacheDirectory, Long.MAX_VALUE, "action");
+    assertNull(miss.restore(outputs));
+    miss.recordDependencies(null).finished();
+    miss.store(outputs);
+
+    // An earlier build of more code left three dex files and other files in the output.
+    write("out/classes3.dex", "third");
+    write("out/resources.txt", "kept");
+    ActionCache hit = new ActionCache(cacheDirectory, Long.MAX_VALUE, "action");
+    assertEquals(Collections.emptyList(), hit.restore(outputs));
+    assertEquals(
+        Arrays.asList("classes.dex", "classes2.dex", "resources.txt"), names(code));
+  }
+}
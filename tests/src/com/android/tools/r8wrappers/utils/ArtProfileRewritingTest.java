@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.profile.art.ArtProfileRuleConsumer;
+import com.android.tools.r8.references.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtProfileRewritingTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("art-profile-rewriting-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  @Test
+  public void reportsDistinctRulesInOutAndIdentical() throws Exception {
+    Path output = directory.resolve("out.txt");
+    ArtProfileRewriting profile = new ArtProfileRewriting(directory.resolve("in.txt"), output);
+    profile.addInputRule("Lcom/example/Kept;");
+    profile.addInputRule("Lcom/example/Renamed;");
+    profile.addInputRule("Lcom/example/Removed;");
+    profile.addInputRule("Lcom/example/Kept;");
+
+    ArtProfileRuleConsumer consumer = profile.getRuleConsumer();
+    consumer.acceptClassRule(Reference.classFromDescriptor("Lcom/example/Kept;"), null);
+    consumer.acceptClassRule(Reference.classFromDescriptor("La;"), null);
+    consumer.acceptClassRule(Reference.classFromDescriptor("La;"), null);
+    profile.finished(null);
+
+    assertEquals(Arrays.asList("Lcom/example/Kept;", "La;"), Files.readAllLines(output));
+    String report = profile.getReport();
+    assertTrue(report, report.endsWith(": 3 rules in, 2 out, 1 identical."));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchManifestTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("batch-manifest-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path writeManifest(String content) throws Exception {
+    return Files.write(
+        directory.resolve("manifest.json"), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void passesBatchArgumentsToEachJob() throws Exception {
+    Path manifest =
+        writeManifest(
+            "{\"arguments\": [\"--output\", \"a\"]}\n{\"arguments\": [\"--output\", \"b\"]}\n");
+    Set<String> runs = new TreeSet<>();
+    int exitCode =
+        BatchManifest.run(
+            new String[] {"--thread-count", "1", "--batch-manifest", manifest.toString()},
+            (args, output) -> {
+              synchronized (runs) {
+                runs.add(String.join(" ", args));
+              }
+              return 0;
+            });
+    assertEquals(0, exitCode);
+    assertEquals(
+        new TreeSet<>(Arrays.asList("--thread-count 1 --output a", "--thread-count 1 --output b")),
+        runs);
+  }
+
+  @Test
+  public void writesOutputOfFailedJobToItsDiagnostics() throws Exception {
+    Path diagnostics = directory.resolve("b.txt");
+    Path manifest =
+        writeManifest(
+            "{\"arguments\": [\"a\"]}\n"
+                + "{\"arguments\": [\"b\"], \"diagnostics\": "
+                + Json.quote(diagnostics.toString())
+                + "}\n");
+    int exitCode =
+        BatchManifest.run(
+            new String[] {"--batch-manifest", manifest.toString(), "--batch-threads", "2"},
+            (args, output) -> {
+              if (args[0].equals("b")) {
+                output.println("job b failed");
+                return 1;
+              }
+              return 0;
+            });
+    assertEquals(1, exitCode);
+    List<String> lines = Files.readAllLines(diagnostics);
+    assertTrue(lines.contains("job b failed"));
+  }
+
+  @Test
+  public void failsOnlyTheJobWhoseDiagnosticsCannotBeWritten() throws Exception {
+    // A diagnostics file below a regular file cannot be created.
+    Path file = Files.write(directory.resolve("file"), new byte[0]);
+    Path manifest =
+        writeManifest(
+            "{\"arguments\": [\"a\"], \"diagnostics\": "
+                + Json.quote(file.resolve("a.txt").toString())
+                + "}\n"
+                + "{\"arguments\": [\"b\"]}\n");
+    Set<String> runs = new TreeSet<>();
+    int exitCode =
+        BatchManifest.run(
+            new String[] {"--batch-manifest", manifest.toString(), "--batch-threads", "1"},
+            (args, output) -> {
+              synchronized (runs) {
+                runs.add(args[0]);
+              }
+              return 0;
+            });
+    assertEquals(1, exitCode);
+    assertEquals(new TreeSet<>(Arrays.asList("a", "b")), runs);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassFileArchiveIndexTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("class-file-archive-index-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ClassFileArchiveIndex.setMaxRetainedBytes(Long.MAX_VALUE);
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path writeJar(String name, String content) throws Exception {
+    Path jar = directory.resolve(name);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("com/example/A.class"));
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      out.write(new byte[] {'\n'});
+    }
+    return jar;
+  }
+
+  @Test
+  public void sharedByContent() throws Exception {
+    ClassFileArchiveIndex first = ClassFileArchiveIndex.acquire(writeJar("a.jar", "shared"));
+    ClassFileArchiveIndex second = ClassFileArchiveIndex.acquire(writeJar("b.jar", "shared"));
+    try {
+      assertSame(first, second);
+      assertEquals(Collections.singleton("Lcom/example/A;"), first.getClassDescriptors());
+      assertArrayEquals(
+          "shared".getBytes(StandardCharsets.UTF_8),
+          first.getProgramResource("Lcom/example/A;").getBytes());
+      assertNull(first.getProgramResource("Lcom/example/B;"));
+    } finally {
+      first.release();
+      second.release();
+    }
+  }
+
+  @Test
+  public void evictsOnlyReleasedIndices() throws Exception {
+    Path jar = writeJar("a.jar", "evicted");
+    ClassFileArchiveIndex held = ClassFileArchiveIndex.acquire(jar);
+    ClassFileArchiveIndex.setMaxRetainedBytes(0);
+    ClassFileArchiveIndex again = ClassFileArchiveIndex.acquire(jar);
+    assertSame(held, again);
+    again.release();
+    held.release();
+    assertEquals(0, ClassFileArchiveIndex.getRetainedBytes());
+    ClassFileArchiveIndex reopened = ClassFileArchiveIndex.acquire(jar);
+    try {
+      assertNotSame(held, reopened);
+    } finally {
+      reopened.release();
+    }
+  }
+}
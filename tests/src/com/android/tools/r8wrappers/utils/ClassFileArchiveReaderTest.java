@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ProgramResourceProvider;
+import com.android.tools.r8.ResourceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassFileArchiveReaderTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("class-file-archive-reader-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ClassFileArchiveReader.setMaxRetainedBytes(0);
+    ClassFileArchiveReader.setMaxRetainedBytes(Long.MAX_VALUE);
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path writeArchive(String name, byte[] classBytes) throws Exception {
+    Path path = directory.resolve(name);
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(path)) {
+      writer.write("classes.dex", new byte[] {'d', 'e', 'x'}, ZipArchive.DEFLATED, 0);
+      writer.write("b/B.class", classBytes, ZipArchive.DEFLATED, 0);
+      writer.write("META-INF/versions/9/b/B.class", classBytes, ZipArchive.STORED, 0);
+      writer.write("module-info.class", classBytes, ZipArchive.STORED, 0);
+      writer.write("a/A.class", classBytes, ZipArchive.STORED, 0);
+    }
+    return path;
+  }
+
+  private static List<String> descriptors(List<ClassFileInput> classes) {
+    List<String> descriptors = new ArrayList<>();
+    for (ClassFileInput clazz : classes) {
+      descriptors.add(clazz.getDescriptor());
+    }
+    return descriptors;
+  }
+
+  @Test
+  public void readsOnlyClassFilesInArchiveOrder() throws Exception {
+    byte[] classBytes = {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe};
+    Path archive = writeArchive("input.jar", classBytes);
+    List<ClassFileInput> classes = ClassFileArchiveReader.readClasses(archive);
+    assertEquals(Arrays.asList("Lb/B;", "La/A;"), descriptors(classes));
+    for (ClassFileInput clazz : classes) {
+      assertArrayEquals(classBytes, clazz.getBytes());
+    }
+  }
+
+  @Test
+  public void rereadsChangedArchive() throws Exception {
+    Path archive = writeArchive("input.jar", new byte[] {1});
+    Files.setLastModifiedTime(archive, FileTime.fromMillis(1_000_000));
+    assertArrayEquals(
+        new byte[] {1}, ClassFileArchiveReader.readClasses(archive).get(0).getBytes());
+
+    // Replace rather than overwrite the archive, which the first index has mapped.
+    Files.move(
+        writeArchive("changed.jar", new byte[] {2, 2}),
+        archive,
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.setLastModifiedTime(archive, FileTime.fromMillis(2_000_000));
+    assertArrayEquals(
+        new byte[] {2, 2}, ClassFileArchiveReader.readClasses(archive).get(0).getBytes());
+  }
+
+  @Test
+  public void providerReadsClassesWhenRequested() throws Exception {
+    Path archive = directory.resolve("later.jar");
+    // Creating the provider does not read the archive.
+    ProgramResourceProvider provider =
+        ClassFileArchiveReader.programProvider(archive);
+    assertThrows(ResourceException.class, provider::getProgramResources);
+
+    writeArchive("later.jar", new byte[] {3});
+    Collection<ProgramResource> resources = provider.getProgramResources();
+    assertEquals(2, resources.size());
+    for (ProgramResource resource : resources) {
+      assertEquals(ProgramResource.Kind.CF, resource.getKind());
+      assertEquals(1, resource.getClassDescriptors().size());
+    }
+    assertEquals(
+        Collections.singleton("Lb/B;"), resources.iterator().next().getClassDescriptors());
+  }
+
+  @Test
+  public void retainsIndicesUpToMappedSize() throws Exception {
+    ClassFileArchiveReader.setMaxRetainedBytes(0);
+    ClassFileArchiveReader.setMaxRetainedBytes(Long.MAX_VALUE);
+    Path first = writeArchive("first.jar", new byte[] {1});
+    Path second = writeArchive("second.jar", new byte[] {2});
+    ClassFileArchiveReader.readClasses(first);
+    assertEquals(Files.size(first), ClassFileArchiveReader.getRetainedBytes());
+    ClassFileArchiveReader.readClasses(first);
+    assertEquals(Files.size(first), ClassFileArchiveReader.getRetainedBytes());
+
+    // The index of the least recently used archive is dropped to make room.
+    ClassFileArchiveReader.setMaxRetainedBytes(Files.size(first) + Files.size(second) - 1);
+    ClassFileArchiveReader.readClasses(second);
+    assertEquals(Files.size(second), ClassFileArchiveReader.getRetainedBytes());
+    assertArrayEquals(
+        new byte[] {1}, ClassFileArchiveReader.readClasses(first).get(0).getBytes());
+    assertEquals(Files.size(first), ClassFileArchiveReader.getRetainedBytes());
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompilerPropertiesTest {
+
+  private static final String FIRST = "com.android.tools.r8wrappers.test.first";
+  private static final String SECOND = "com.android.tools.r8wrappers.test.second";
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    // Leave no test properties installed for later tests.
+    new CompilerProperties().runWith(() -> {});
+  }
+
+  @Test
+  public void installsOnlyTheCompilationProperties() {
+    CompilerProperties first = new CompilerProperties().set(FIRST).set(SECOND, false);
+    assertTrue(first.isSet(FIRST));
+    assertFalse(first.isSet(SECOND));
+    first.runWith(
+        () -> {
+          assertEquals("1", System.getProperty(FIRST));
+          assertNull(System.getProperty(SECOND));
+        });
+    new CompilerProperties()
+        .set(SECOND)
+        .runWith(
+            () -> {
+              assertNull(System.getProperty(FIRST));
+              assertEquals("1", System.getProperty(SECOND));
+            });
+  }
+
+  @Test
+  public void samePropertiesRunConcurrently() throws Exception {
+    CyclicBarrier bothRunning = new CyclicBarrier(2);
+    Future<?> first =
+        executor.submit(
+            () -> {
+              new CompilerProperties()
+                  .set(FIRST)
+                  .runWith(() -> bothRunning.await(10, TimeUnit.SECONDS));
+              return null;
+            });
+    Future<?> second =
+        executor.submit(
+            () -> {
+              new CompilerProperties()
+                  .set(FIRST)
+                  .runWith(() -> bothRunning.await(10, TimeUnit.SECONDS));
+              return null;
+            });
+    first.get(20, TimeUnit.SECONDS);
+    second.get(20, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void differentPropertiesWaitForRunningCompilations() throws Exception {
+    CountDownLatch firstRunning = new CountDownLatch(1);
+    CountDownLatch releaseFirst = new CountDownLatch(1);
+    AtomicBoolean firstFinished = new AtomicBoolean(false);
+    Future<?> first =
+        executor.submit(
+            () -> {
+              new CompilerProperties()
+                  .set(FIRST)
+                  .runWith(
+                      () -> {
+                        firstRunning.countDown();
+                        releaseFirst.await();
+                        firstFinished.set(true);
+                      });
+              return null;
+            });
+    assertTrue(firstRunning.await(10, TimeUnit.SECONDS));
+    Future<?> second =
+        executor.submit(
+            () -> {
+              new CompilerProperties()
+                  .set(SECOND)
+                  .runWith(
+                      () -> {
+                        assertTrue(firstFinished.get());
+                        assertNull(System.getProperty(FIRST));
+                        assertEquals("1", System.getProperty(SECOND));
+                      });
+              return null;
+            });
+    Thread.sleep(100);
+    assertFalse(second.isDone());
+    releaseFirst.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentHashTest {
+
+  private static final String EMPTY_SHA_256 =
+      "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("content-hash-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  @Test
+  public void fileHashIsSha256OfContent() throws Exception {
+    Path empty = Files.write(directory.resolve("empty"), new byte[0]);
+    assertEquals(EMPTY_SHA_256, ContentHash.ofFile(empty));
+    Path first = Files.write(directory.resolve("first"), bytes("content"));
+    Path second = Files.write(directory.resolve("second"), bytes("content"));
+    assertEquals(ContentHash.ofFile(first), ContentHash.ofFile(second));
+  }
+
+  @Test
+  public void valuesAreDelimited() {
+    assertNotEquals(
+        new ContentHash().add("ab").add("c").hash(), new ContentHash().add("a").add("bc").hash());
+    assertEquals(new ContentHash().add(bytes("x")).hash(), new ContentHash().add("x").hash());
+    assertEquals(new ContentHash().add(12).hash(), new ContentHash().add("12").hash());
+  }
+
+  @Test
+  public void fileHashIsRecomputedWhenFileChanges() throws Exception {
+    Path file = Files.write(directory.resolve("file"), bytes("aaaa"));
+    FileTime time = FileTime.fromMillis(1_000_000);
+    Files.setLastModifiedTime(file, time);
+    String hash = ContentHash.ofFile(file);
+
+    // The same size and time is taken as unchanged, as by build systems.
+    Files.write(file, bytes("bbbb"));
+    Files.setLastModifiedTime(file, time);
+    assertEquals(hash, ContentHash.ofFile(file));
+
+    Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000));
+    assertNotEquals(hash, ContentHash.ofFile(file));
+    Files.write(file, bytes("aaaaa"));
+    Files.setLastModifiedTime(file, time);
+    assertNotEquals(hash, ContentHash.ofFile(file));
+  }
+
+  @Test
+  public void recentlyModifiedFileIsHashedAgain() throws Exception {
+    Path file = Files.write(directory.resolve("file"), bytes("aaaa"));
+    FileTime time = Files.getLastModifiedTime(file);
+    String hash = ContentHash.ofFile(file);
+    Files.write(file, bytes("bbbb"));
+    Files.setLastModifiedTime(file, time);
+    assertNotEquals(hash, ContentHash.ofFile(file));
+  }
+
+  @Test
+  public void modificationTimeIsComparedInNanoseconds() throws Exception {
+    Path file = Files.write(directory.resolve("file"), bytes("aaaa"));
+    Files.setLastModifiedTime(file, FileTime.from(1_000_000_000_001L, TimeUnit.NANOSECONDS));
+    String hash = ContentHash.ofFile(file);
+    Files.write(file, bytes("bbbb"));
+    Files.setLastModifiedTime(file, FileTime.from(1_000_000_000_002L, TimeUnit.NANOSECONDS));
+    assertNotEquals(hash, ContentHash.ofFile(file));
+  }
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.ParseFlagInfo;
+import com.android.tools.r8.origin.Origin;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DepsFileWriterTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("deps-file-writer-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private void write(Path output, String... dependencies) {
+    DepsFileWriter writer = new DepsFileWriter(Paths.get("out/classes.dex"), output.toString());
+    for (String dependency : dependencies) {
+      writer.accept(Origin.unknown(), Paths.get(dependency));
+    }
+    writer.finished();
+  }
+
+  @Test
+  public void writesSortedEscapedDependencies() throws Exception {
+    Path output = directory.resolve("classes.d");
+    write(output, "b.jar", "a dir/a.jar");
+    assertEquals(
+        "out/classes.dex: a\\ dir/a.jar b.jar\n",
+        new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void keepsUnchangedDepsFile() throws Exception {
+    Path output = directory.resolve("classes.d");
+    write(output, "a.jar");
+    FileTime old = FileTime.fromMillis(1000);
+    Files.setLastModifiedTime(output, old);
+    write(output, "a.jar");
+    assertEquals(old, Files.getLastModifiedTime(output));
+    write(output, "a.jar", "b.jar");
+    assertNotEquals(old, Files.getLastModifiedTime(output));
+  }
+
+  @Test
+  public void outputFlagValuesAreOptions() throws Exception {
+    List<ParseFlagInfo> flags =
+        Arrays.asList(
+            new WrapperFlag("--output <file>", ""),
+            new WrapperFlag("--main-dex-list-output <file>", ""),
+            new WrapperFlag("--release", ""));
+    CompilerArguments arguments =
+        CompilerArguments.split(
+            new String[] {
+              "--output", "out.jar", "--release", "--main-dex-list-output", "list.txt", "in.jar"
+            },
+            flags);
+    assertEquals(Arrays.asList(Paths.get("in.jar")), arguments.getInputs());
+    assertEquals("list.txt", arguments.getOptionValue("--main-dex-list-output"));
+    for (String flag : Arrays.asList("--output", "--main-dex-list-output")) {
+      assertTrue(CompilerArguments.OUTPUT_FLAGS.contains(flag));
+    }
+    assertFalse(CompilerArguments.OUTPUT_FLAGS.contains("--release"));
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DexContainerTest {
+
+  private static final int HEADER_SIZE = 0x70;
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("dex-container-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  /** Writes a dex header at {@code start} with string ids following it. */
+  private static void putSection(
+      ByteBuffer buffer, int start, String version, int size, int... stringDataOffsets) {
+    buffer.position(start);
+    buffer.put(("dex\n" + version + "\0").getBytes(StandardCharsets.US_ASCII));
+    buffer.putInt(start + 0x20, size);
+    buffer.putInt(start + 0x38, stringDataOffsets.length);
+    buffer.putInt(start + 0x3c, HEADER_SIZE);
+    for (int i = 0; i < stringDataOffsets.length; i++) {
+      buffer.putInt(start + HEADER_SIZE + 4 * i, stringDataOffsets[i]);
+    }
+  }
+
+  private static void putString(ByteBuffer buffer, int offset, String value) {
+    buffer.position(offset);
+    buffer.put((byte) value.length());
+    buffer.put(value.getBytes(StandardCharsets.US_ASCII));
+    buffer.put((byte) 0);
+  }
+
+  /** A container of two sections which both refer to the string "abc". */
+  private static byte[] container() {
+    int second = HEADER_SIZE + 8;
+    int data = second + HEADER_SIZE + 8;
+    ByteBuffer buffer = ByteBuffer.allocate(data + 12).order(ByteOrder.LITTLE_ENDIAN);
+    putSection(buffer, 0, "041", second, data, data + 5);
+    putSection(buffer, second, "041", buffer.capacity() - second, data, data + 9);
+    putString(buffer, data, "abc");
+    putString(buffer, data + 5, "xy");
+    putString(buffer, data + 9, "z");
+    return buffer.array();
+  }
+
+  private static byte[] classic() {
+    int data = HEADER_SIZE + 4;
+    ByteBuffer buffer = ByteBuffer.allocate(data + 3).order(ByteOrder.LITTLE_ENDIAN);
+    putSection(buffer, 0, "035", buffer.capacity(), data);
+    putString(buffer, data, "a");
+    return buffer.array();
+  }
+
+  @Test
+  public void estimatesClassicSizeFromSharedStringData() throws Exception {
+    Path output = Files.createDirectory(directory.resolve("out"));
+    Files.write(output.resolve("classes.dex"), container());
+    Files.write(output.resolve("classes2.dex"), classic());
+    Files.write(output.resolve("classes.txt"), new byte[] {1});
+    Path report = directory.resolve("report.json");
+
+    assertEquals(
+        "DEX output "
+            + output
+            + ": 2 files with 3 dex sections, 371 bytes, estimated classic dex 376 bytes"
+            + " (1.3% saved).",
+        DexContainer.writeReport(output, report));
+
+    Map<?, ?> json = (Map<?, ?>) Json.parse(Files.readString(report));
+    assertEquals(371L, ((Number) json.get("bytes")).longValue());
+    List<?> files = (List<?>) json.get("files");
+    Map<?, ?> first = (Map<?, ?>) files.get(0);
+    assertEquals("classes.dex", first.get("name"));
+    assertEquals(Boolean.TRUE, first.get("container"));
+    assertEquals(2L, ((Number) first.get("sections")).longValue());
+    assertEquals(12L, ((Number) first.get("stringDataBytes")).longValue());
+    assertEquals(257L, ((Number) first.get("classicBytes")).longValue());
+    Map<?, ?> second = (Map<?, ?>) files.get(1);
+    assertEquals(Boolean.FALSE, second.get("container"));
+    assertEquals(119L, ((Number) second.get("classicBytes")).longValue());
+  }
+
+  @Test
+  public void readsDexFilesOfArchive() throws Exception {
+    Path output = directory.resolve("out.zip");
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+      writer.write("classes.dex", classic(), ZipArchive.DEFLATED, 0);
+      writer.write("res/raw.bin", new byte[] {1}, ZipArchive.STORED, 0);
+    }
+    assertEquals(
+        "DEX output "
+            + output
+            + ": 1 files with 1 dex sections, 119 bytes, estimated classic dex 119 bytes"
+            + " (0.0% saved).",
+        DexContainer.writeReport(output, directory.resolve("report.json")));
+  }
+
+  @Test
+  public void truncatedDexIsNotAnError() throws Exception {
+    Path output = Files.createDirectory(directory.resolve("out"));
+    byte[] bytes = classic();
+    Files.write(output.resolve("classes.dex"), Arrays.copyOf(bytes, HEADER_SIZE + 2));
+    assertEquals(
+        "DEX output "
+            + output
+            + ": 1 files with 1 dex sections, 114 bytes, estimated classic dex 114 bytes"
+            + " (0.0% saved).",
+        DexContainer.writeReport(output, directory.resolve("report.json")));
+  }
+}
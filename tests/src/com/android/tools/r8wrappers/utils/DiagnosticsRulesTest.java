@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.Diagnostic;
+import com.android.tools.r8.DiagnosticsLevel;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8.position.Position;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiagnosticsRulesTest {
+
+  private static final List<String> NO_ORIGIN = Collections.emptyList();
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("diagnostics-rules-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  @Test
+  public void mostSpecificTypePatternWins() {
+    DiagnosticsRules rules = new DiagnosticsRules();
+    rules.add(DiagnosticsLevel.ERROR, "Kind", "*", null);
+    rules.add(DiagnosticsLevel.WARNING, "Kind", "com.example**", null);
+    rules.add(DiagnosticsLevel.INFO, "Kind", "com.example.*", null);
+    rules.add(DiagnosticsLevel.NONE, "Kind", "com.example.Foo", null);
+    assertEquals(4, rules.size());
+
+    assertEquals(DiagnosticsLevel.NONE, rules.classify("Kind", "com.example.Foo", NO_ORIGIN));
+    assertEquals(DiagnosticsLevel.INFO, rules.classify("Kind", "com.example.Bar", NO_ORIGIN));
+    assertEquals(
+        DiagnosticsLevel.WARNING, rules.classify("Kind", "com.example.sub.Bar", NO_ORIGIN));
+    assertEquals(DiagnosticsLevel.WARNING, rules.classify("Kind", "com.examples.Foo", NO_ORIGIN));
+    assertEquals(DiagnosticsLevel.ERROR, rules.classify("Kind", "org.Foo", NO_ORIGIN));
+    assertEquals(DiagnosticsLevel.ERROR, rules.classify("Kind", null, NO_ORIGIN));
+    assertNull(rules.classify("OtherKind", "com.example.Foo", NO_ORIGIN));
+  }
+
+  @Test
+  public void originRulesWinAndKindsWinOverAnyKind() {
+    DiagnosticsRules rules = new DiagnosticsRules();
+    rules.add(DiagnosticsLevel.INFO, "*", "*", null);
+    rules.add(DiagnosticsLevel.WARNING, "Kind", "kotlin**", null);
+    rules.add(DiagnosticsLevel.NONE, "Kind", "kotlin**", "lib");
+    List<String> lib = DiagnosticsRules.getOriginSegments("out/lib.jar:kotlin/Unit.class");
+    List<String> other = DiagnosticsRules.getOriginSegments("out/other.jar");
+
+    assertEquals(DiagnosticsLevel.NONE, rules.classify("Kind", "kotlin.Unit", lib));
+    assertEquals(DiagnosticsLevel.WARNING, rules.classify("Kind", "kotlin.Unit", other));
+    assertEquals(DiagnosticsLevel.INFO, rules.classify("Kind", "java.lang.Object", other));
+    assertEquals(DiagnosticsLevel.INFO, rules.classify("OtherKind", "kotlin.Unit", lib));
+  }
+
+  @Test
+  public void originSegmentsFromInnermost() {
+    assertEquals(
+        Arrays.asList("Unit.class", "Unit", "kotlin", "lib.jar", "lib", "out"),
+        DiagnosticsRules.getOriginSegments("out/lib.jar:kotlin/Unit.class"));
+    assertEquals(
+        Arrays.asList("androidx.annotation_annotation", "out"),
+        DiagnosticsRules.getOriginSegments("out/androidx.annotation_annotation"));
+  }
+
+  @Test
+  public void parsesRulesFile() throws Exception {
+    Path file =
+        Files.write(
+            directory.resolve("rules.txt"),
+            Arrays.asList(
+                "# Benign duplicates.",
+                "",
+                "none Kind kotlin** lib  # Statically linked.",
+                "Warning * *"));
+    DiagnosticsRules rules = new DiagnosticsRules();
+    rules.parse(file);
+    assertEquals(2, rules.size());
+    assertEquals(
+        DiagnosticsLevel.NONE,
+        rules.classify("Kind", "kotlin.Unit", DiagnosticsRules.getOriginSegments("lib.jar")));
+    assertEquals(DiagnosticsLevel.WARNING, rules.classify("Kind", "kotlin.Unit", NO_ORIGIN));
+  }
+
+  @Test
+  public void invalidRulesFail() throws Exception {
+    Path level = Files.write(directory.resolve("level.txt"), Arrays.asList("loud * *"));
+    Path arity = Files.write(directory.resolve("arity.txt"), Arrays.asList("none *"));
+    DiagnosticsRules rules = new DiagnosticsRules();
+    RuntimeException e = assertThrows(RuntimeException.class, () -> rules.parse(level));
+    assertTrue(e.getMessage(), e.getMessage().contains("level.txt:1: Invalid level loud"));
+    assertThrows(RuntimeException.class, () -> rules.parse(arity));
+    assertTrue(rules.isEmpty());
+  }
+
+  @Test
+  public void handlerAppliesRulesByOrigin() throws Exception {
+    Path file =
+        Files.write(
+            directory.resolve("rules.txt"), Arrays.asList("none * * lib", "error * * strict"));
+    WrapperDiagnosticsHandler handler = new WrapperDiagnosticsHandler();
+    handler.addRules(file);
+
+    assertEquals(
+        DiagnosticsLevel.NONE,
+        handler.modifyDiagnosticsLevel(DiagnosticsLevel.WARNING, diagnostic("out/lib.jar")));
+    assertEquals(
+        DiagnosticsLevel.ERROR,
+        handler.modifyDiagnosticsLevel(DiagnosticsLevel.WARNING, diagnostic("out/strict.jar")));
+    assertEquals(
+        DiagnosticsLevel.WARNING,
+        handler.modifyDiagnosticsLevel(DiagnosticsLevel.WARNING, diagnostic("out/other.jar")));
+    // Infos are not printed by default.
+    assertEquals(
+        DiagnosticsLevel.NONE,
+        handler.modifyDiagnosticsLevel(DiagnosticsLevel.INFO, diagnostic("out/other.jar")));
+    handler.setPrintInfoDiagnostics(true);
+    assertEquals(
+        DiagnosticsLevel.INFO,
+        handler.modifyDiagnosticsLevel(DiagnosticsLevel.INFO, diagnostic("out/other.jar")));
+  }
+
+  private static Diagnostic diagnostic(String origin) {
+    return new Diagnostic() {
+      @Override
+      public Origin getOrigin() {
+        return new PathOrigin(Paths.get(origin));
+      }
+
+      @Override
+      public Position getPosition() {
+        return Position.UNKNOWN;
+      }
+
+      @Override
+      public String getDiagnosticMessage() {
+        return "Diagnostic in " + origin;
+      }
+    };
+  }
+}
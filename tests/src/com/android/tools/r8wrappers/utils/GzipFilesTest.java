@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GzipFilesTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("gzip-files-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static List<String> readLines(Path path) throws Exception {
+    try (BufferedReader reader = GzipFiles.newBufferedReader(path)) {
+      return reader.lines().collect(Collectors.toList());
+    }
+  }
+
+  private static List<Path> list(Path directory) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void compressedOutputReadsLikePlainText() throws Exception {
+    Path compressed = directory.resolve("out/mapping.txt");
+    GzipFiles.GzipStringConsumer consumer = GzipFiles.stringConsumer(compressed);
+    consumer.accept("a -> b:\n", null);
+    consumer.accept("    int c -> d\n", null);
+    consumer.finished(null);
+    consumer.discard();
+    Path plain =
+        Files.write(directory.resolve("plain.txt"), "a -> b:\n".getBytes(StandardCharsets.UTF_8));
+
+    assertTrue(GzipFiles.isGzip(compressed));
+    assertFalse(GzipFiles.isGzip(plain));
+    assertEquals(Arrays.asList("a -> b:", "    int c -> d"), readLines(compressed));
+    assertEquals(Arrays.asList("a -> b:"), readLines(plain));
+    assertEquals(Arrays.asList(compressed), list(compressed.getParent()));
+  }
+
+  @Test
+  public void outputOnlyDependsOnText() throws Exception {
+    Path first = directory.resolve("first.txt");
+    Path second = directory.resolve("second.txt");
+    for (Path path : Arrays.asList(first, second)) {
+      GzipFiles.GzipStringConsumer consumer = GzipFiles.stringConsumer(path);
+      consumer.accept("text", null);
+      consumer.finished(null);
+    }
+    assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+  }
+
+  @Test
+  public void emptyOutputIsWritten() throws Exception {
+    Path output = directory.resolve("usage.txt");
+    GzipFiles.stringConsumer(output).finished(null);
+    assertTrue(GzipFiles.isGzip(output));
+    assertEquals(Arrays.asList(), readLines(output));
+  }
+
+  @Test
+  public void discardRemovesUnfinishedOutput() throws Exception {
+    GzipFiles.GzipStringConsumer consumer =
+        GzipFiles.stringConsumer(directory.resolve("mapping.txt"));
+    consumer.accept("a -> b:\n", null);
+    assertEquals(1, list(directory).size());
+    consumer.discard();
+    assertEquals(Arrays.asList(), list(directory));
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeapAdmissionTest {
+
+  private static final long BASE_ESTIMATE = 256L << 20;
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("heap-admission-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static HeapAdmission create(long budget) throws Exception {
+    return HeapAdmission.create(
+        "r8", new String[] {HeapAdmission.HEAP_BUDGET_FLAG, String.valueOf(budget)}, 2);
+  }
+
+  @Test
+  public void estimatesFromInputsWithoutHistory() throws Exception {
+    assertEquals(BASE_ESTIMATE + 20, create(1L << 40).estimate("out.jar", 10));
+  }
+
+  @Test
+  public void recordsPeakOfCompilationThatRanAlone() throws Exception {
+    HeapAdmission admission = create(1L << 40);
+    admission.admit("out.jar", 0).close();
+    long recorded = admission.estimate("out.jar", 0);
+    assertNotEquals(BASE_ESTIMATE, recorded);
+    assertTrue(recorded > 0);
+  }
+
+  @Test
+  public void discardedPeakIsNotRecorded() throws Exception {
+    HeapAdmission admission = create(1L << 40);
+    HeapAdmission.Admission restored = admission.admit("out.jar", 0);
+    restored.discardPeak();
+    restored.close();
+    assertEquals(BASE_ESTIMATE, admission.estimate("out.jar", 0));
+  }
+
+  @Test
+  public void overlappingCompilationsAreNotRecorded() throws Exception {
+    HeapAdmission admission = create(1L << 40);
+    HeapAdmission.Admission first = admission.admit("a.jar", 0);
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                admission.admit("b.jar", 0).close();
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+    thread.join();
+    first.close();
+    assertEquals(BASE_ESTIMATE, admission.estimate("a.jar", 0));
+    assertEquals(BASE_ESTIMATE, admission.estimate("b.jar", 0));
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void waitsForBudget() throws Exception {
+    HeapAdmission admission = create(BASE_ESTIMATE + BASE_ESTIMATE / 2);
+    HeapAdmission.Admission first = admission.admit("a.jar", 0);
+    CountDownLatch admitted = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              try (HeapAdmission.Admission second = admission.admit("b.jar", 0)) {
+                admitted.countDown();
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+    assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(BASE_ESTIMATE, admission.getUsed());
+    first.close();
+    assertTrue(admitted.await(10, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(0, admission.getUsed());
+  }
+
+  @Test
+  public void loadsKnownPeaksFromHistory() throws Exception {
+    Path log = directory.resolve("metrics.jsonl");
+    Files.write(
+        log,
+        ("{\"tool\":\"r8\",\"output\":\"a.jar\",\"success\":true,\"peakHeapBytes\":1000}\n"
+                + "{\"tool\":\"r8\",\"output\":\"b.jar\",\"success\":true}\n"
+                + "{\"tool\":\"d8\",\"output\":\"c.jar\",\"success\":true,\"peakHeapBytes\":1}\n"
+                + "{\"tool\":\"r8\",\"output\":\"d.jar\",\"success\":false,\"peakHeapBytes\":1}\n"
+                + "{\"tool\":\"r8\",\"out")
+            .getBytes(StandardCharsets.UTF_8));
+    HeapAdmission admission =
+        HeapAdmission.create(
+            "r8", new String[] {HeapAdmission.HEAP_HISTORY_FLAG, log.toString()}, 2);
+    assertEquals(1000, admission.estimate("a.jar", 0));
+    assertEquals(BASE_ESTIMATE, admission.estimate("b.jar", 0));
+    assertEquals(BASE_ESTIMATE, admission.estimate("c.jar", 0));
+    assertEquals(BASE_ESTIMATE, admission.estimate("d.jar", 0));
+  }
+
+  @Test
+  public void nestedMeasurementsShareThePeak() throws Exception {
+    AtomicLong otherPeak = new AtomicLong();
+    try (PeakHeap.Measurement outer = PeakHeap.start()) {
+      try (PeakHeap.Measurement inner = PeakHeap.start()) {
+        assertSame(outer, inner);
+        assertTrue(inner.getPeakBytes() > 0);
+      }
+      assertTrue(outer.getPeakBytes() > 0);
+      Thread thread =
+          new Thread(
+              () -> {
+                try (PeakHeap.Measurement other = PeakHeap.start()) {
+                  otherPeak.set(other.getPeakBytes());
+                }
+              });
+      thread.start();
+      thread.join();
+      assertEquals(-1, outer.getPeakBytes());
+    }
+    assertEquals(-1, otherPeak.get());
+  }
+}
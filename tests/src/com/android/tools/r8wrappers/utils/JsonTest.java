@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonTest {
+
+  @Test
+  public void parsesValues() {
+    Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("arguments", Arrays.asList("--output", "out"));
+    expected.put("requestId", 12L);
+    expected.put("ratio", -1.5e3);
+    expected.put("cancel", false);
+    expected.put("verbose", true);
+    expected.put("sandboxDir", null);
+    expected.put("inputs", Collections.emptyList());
+    expected.put("empty", Collections.emptyMap());
+    Object parsed =
+        Json.parse(
+            " { \"arguments\" : [\"--output\", \"out\"], \"requestId\": 12, \"ratio\": -1.5e3,"
+                + " \"cancel\": false, \"verbose\": true, \"sandboxDir\": null, \"inputs\": [],"
+                + " \"empty\": {} } ");
+    assertEquals(expected, parsed);
+    // Keys keep their order, for stable logs.
+    assertEquals(
+        Arrays.asList(expected.keySet().toArray()),
+        Arrays.asList(((Map<?, ?>) parsed).keySet().toArray()));
+  }
+
+  @Test
+  public void quotedStringsRoundTrip() {
+    String string = "a \"quoted\" \\ path\n\twith\r\u0001 control \u00e9";
+    String quoted = Json.quote(string);
+    assertEquals("\"a \\\"quoted\\\" \\\\ path\\n\\twith\\r\\u0001 control \u00e9\"", quoted);
+    assertEquals(string, Json.parse(quoted));
+    assertEquals("/\b\f", Json.parse("\"\\/\\b\\f\""));
+  }
+
+  @Test
+  public void readsConcatenatedValues() throws IOException {
+    Json json = new Json(new StringReader("{\"requestId\": 1}\n{\"requestId\": 2}\n"));
+    assertTrue(json.hasNext());
+    assertEquals(1L, ((Map<?, ?>) json.next()).get("requestId"));
+    assertTrue(json.hasNext());
+    assertEquals(2L, ((Map<?, ?>) json.next()).get("requestId"));
+    assertFalse(json.hasNext());
+    assertThrows(IOException.class, json::next);
+  }
+
+  @Test
+  public void invalidInputFails() {
+    for (String input :
+        Arrays.asList("", "{\"a\" 1}", "{\"a\": 1", "[1, ]", "[1 2]", "\"open", "tru", "{1: 2}")) {
+      assertThrows(input, RuntimeException.class, () -> Json.parse(input));
+    }
+  }
+
+  @Test
+  public void nullAndNestedValues() {
+    assertNull(Json.parse("null"));
+    List<?> list = (List<?>) Json.parse("[[1], {\"a\": [true]}]");
+    assertEquals(Arrays.asList(1L), list.get(0));
+    assertEquals(Collections.singletonMap("a", Arrays.asList(true)), list.get(1));
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapRegistryTest {
+
+  private Path directory;
+  private Path registry;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("map-registry-test");
+    registry = directory.resolve("registry/maps.tsv");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static String header(String id) {
+    return "# compiler: R8\n"
+        + "# pg_map_id: "
+        + id
+        + "\n"
+        + "# pg_map_hash: SHA-256 hash-"
+        + id
+        + "\n"
+        + "com.example.A -> a:\n";
+  }
+
+  private Path writeMap(String name, String content) throws Exception {
+    Path map = directory.resolve(name);
+    Files.write(map, content.getBytes(StandardCharsets.UTF_8));
+    return map;
+  }
+
+  @Test
+  public void registersIdHashAndPaths() throws Exception {
+    Path map = writeMap("a.map", header("1234"));
+    Path partitionMap = directory.resolve("a.map.zip");
+    assertTrue(MapRegistry.register(registry, map, partitionMap));
+    assertTrue(MapRegistry.register(registry, writeMap("b.map", header("5678")), null));
+
+    List<MapRegistry.Entry> entries = MapRegistry.read(registry);
+    assertEquals(2, entries.size());
+    MapRegistry.Entry entry = entries.get(0);
+    assertEquals("1234", entry.getId());
+    assertEquals("hash-1234", entry.getHash());
+    assertEquals(map.toAbsolutePath().normalize(), entry.getPath());
+    assertEquals(partitionMap.toAbsolutePath().normalize(), entry.getPartitionMap());
+    assertEquals("5678", entries.get(1).getId());
+    assertNull(entries.get(1).getPartitionMap());
+  }
+
+  @Test
+  public void replacesEntryOfSamePath() throws Exception {
+    Path map = writeMap("a.map", header("1234"));
+    assertTrue(MapRegistry.register(registry, map, null));
+    writeMap("a.map", header("4321"));
+    assertTrue(MapRegistry.register(registry, directory.resolve("x/../a.map"), null));
+
+    List<MapRegistry.Entry> entries = MapRegistry.read(registry);
+    assertEquals(1, entries.size());
+    assertEquals("4321", entries.get(0).getId());
+  }
+
+  @Test
+  public void skipsMapWithoutHeader() throws Exception {
+    Path map = writeMap("a.map", "com.example.A -> a:\n# pg_map_id: 1234\n");
+    assertFalse(MapRegistry.register(registry, map, null));
+    assertFalse(Files.exists(registry));
+    assertTrue(MapRegistry.read(registry).isEmpty());
+  }
+
+  @Test
+  public void readsHeaderOfGzipMap() throws Exception {
+    Path map = directory.resolve("a.map.gz");
+    try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(map))) {
+      stream.write(header("1234").getBytes(StandardCharsets.UTF_8));
+    }
+    assertTrue(MapRegistry.register(registry, map, null));
+    assertEquals("hash-1234", MapRegistry.read(registry).get(0).getHash());
+  }
+
+  @Test
+  public void keepsConcurrentRegistrations() throws Exception {
+    int maps = 32;
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (int i = 0; i < maps; i++) {
+        Path map = writeMap("m" + i + ".map", header("id" + i));
+        futures.add(executor.submit(() -> MapRegistry.register(registry, map, null)));
+      }
+      for (Future<Boolean> future : futures) {
+        assertTrue(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Set<String> ids = new HashSet<>();
+    for (MapRegistry.Entry entry : MapRegistry.read(registry)) {
+      ids.add(entry.getId());
+    }
+    assertEquals(maps, ids.size());
+  }
+}
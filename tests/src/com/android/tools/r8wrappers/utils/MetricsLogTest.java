@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsLogTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("metrics-log-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  @Test
+  public void appendsOneRecordPerInvocation() throws Exception {
+    Path input = Files.write(directory.resolve("in.jar"), new byte[10]);
+    Path output = Files.write(directory.resolve("out.jar"), new byte[3]);
+    Path log = directory.resolve("metrics.jsonl");
+    MetricsLog first = new MetricsLog("d8");
+    first.setOutput(output);
+    first.addInputs(Arrays.asList(input, directory.resolve("missing.jar")));
+    first.append(log, true, 1000);
+    new MetricsLog("r8").append(log, false, -1);
+
+    List<String> lines = Files.readAllLines(log);
+    assertEquals(2, lines.size());
+    Map<?, ?> record = (Map<?, ?>) Json.parse(lines.get(0));
+    assertEquals("d8", record.get("tool"));
+    assertEquals(output.toString(), record.get("output"));
+    assertEquals(true, record.get("success"));
+    assertEquals(2L, ((Number) record.get("inputs")).longValue());
+    assertEquals(10L, ((Number) record.get("inputBytes")).longValue());
+    assertEquals(3L, ((Number) record.get("outputBytes")).longValue());
+    assertEquals(1000L, ((Number) record.get("peakHeapBytes")).longValue());
+    record = (Map<?, ?>) Json.parse(lines.get(1));
+    assertEquals("r8", record.get("tool"));
+    assertEquals(false, record.get("success"));
+    assertFalse(record.containsKey("peakHeapBytes"));
+  }
+
+  @Test
+  public void appendToDirectoryFails() {
+    // The wrappers report this as a warning rather than failing the compilation.
+    assertThrows(IOException.class, () -> new MetricsLog("d8").append(directory, true, -1));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.retrace.MappingPartition;
+import com.android.tools.r8.retrace.MappingPartitionMetadata;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionMapArchiveTest {
+
+  private static final byte[] METADATA = {4, 2};
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("partition-map-archive-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static MappingPartition partition(String key) {
+    return new MappingPartition() {
+      @Override
+      public String getKey() {
+        return key;
+      }
+
+      @Override
+      public byte[] getPayload() {
+        return payload(key);
+      }
+    };
+  }
+
+  private static byte[] payload(String key) {
+    return ("mapping of " + key).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private List<Path> listDirectory() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void readsBackEveryPartition() throws Exception {
+    // More classes than buckets, so buckets hold several partitions.
+    int classes = 10_000;
+    Path output = directory.resolve("mapping.zip");
+    PartitionMapArchive.Writer writer = PartitionMapArchive.writer(output);
+    for (int i = 0; i < classes; i++) {
+      writer.acceptMappingPartition(partition("com.example.C" + i));
+    }
+    MappingPartitionMetadata metadata = () -> METADATA;
+    writer.acceptMappingPartitionMetadata(metadata);
+    writer.finished(null);
+    assertEquals(List.of(output), listDirectory());
+
+    PartitionMapArchive archive = PartitionMapArchive.open(output);
+    assertArrayEquals(METADATA, archive.getMetadata());
+    for (int i = 0; i < classes; i++) {
+      String key = "com.example.C" + i;
+      assertArrayEquals(key, payload(key), archive.getPartition(key));
+    }
+    assertNull(archive.getPartition("com.example.Missing"));
+    assertTrue(ZipArchive.open(output).getEntries().size() <= 4097);
+  }
+
+  @Test
+  public void noOutputWithoutMetadata() throws Exception {
+    PartitionMapArchive.Writer writer = PartitionMapArchive.writer(directory.resolve("map.zip"));
+    writer.acceptMappingPartition(partition("a"));
+    assertThrows(RuntimeException.class, () -> writer.finished(null));
+    assertEquals(List.of(), listDirectory());
+  }
+
+  @Test
+  public void rejectsArchiveWithoutMetadata() throws Exception {
+    Path path = directory.resolve("other.zip");
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(path)) {
+      writer.write("partitions/0", new byte[0], ZipArchive.STORED, 0);
+    }
+    assertThrows(RuntimeException.class, () -> PartitionMapArchive.open(path));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.OutputMode;
+import com.android.tools.r8.origin.PathOrigin;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PerClassDexCacheTest {
+
+  private static final int MIN_API = 21;
+
+  /** An interface with a default method, desugared into the classes implementing it. */
+  public interface Greeter {
+    default String greet() {
+      return "hello";
+    }
+  }
+
+  public static class Greeting implements Greeter {}
+
+  public static class Other {}
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("per-class-dex-cache-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static List<ClassFileInput> classes(Class<?>... classes) throws Exception {
+    List<ClassFileInput> inputs = new ArrayList<>();
+    for (Class<?> clazz : classes) {
+      String entry = clazz.getName().replace('.', '/') + ".class";
+      try (InputStream in = clazz.getResourceAsStream("/" + entry)) {
+        inputs.add(
+            new ClassFileInput(
+                ClassFileInput.getDescriptorForEntry(entry),
+                in.readAllBytes(),
+                new PathOrigin(Paths.get(entry))));
+      }
+    }
+    return inputs;
+  }
+
+  private byte[] compile(PerClassDexCache cache, List<ClassFileInput> classes, String name)
+      throws Exception {
+    Path output = Files.createDirectories(directory.resolve(name));
+    cache.compile(
+        classes,
+        () ->
+            D8Command.builder()
+                .setMinApiLevel(MIN_API)
+                .setOutput(output, OutputMode.DexIndexed),
+        builder -> D8.run(builder.build()));
+    return Files.readAllBytes(output.resolve("classes.dex"));
+  }
+
+  @Test
+  public void reusesPerClassOutput() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    List<ClassFileInput> program = classes(Greeter.class, Greeting.class);
+
+    PerClassDexCache cache = new PerClassDexCache(cacheDirectory, "config");
+    byte[] first = compile(cache, program, "first");
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    cache = new PerClassDexCache(cacheDirectory, "config");
+    byte[] second = compile(cache, program, "second");
+    assertEquals(2, cache.getHits());
+    assertEquals(0, cache.getMisses());
+    assertArrayEquals(first, second);
+
+    cache = new PerClassDexCache(cacheDirectory, "config");
+    compile(cache, classes(Greeter.class, Greeting.class, Other.class), "third");
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  private Path writeArchive(String name, String... entries) throws Exception {
+    Path path = directory.resolve(name);
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(path)) {
+      for (String entry : entries) {
+        writer.write(entry, new byte[] {1}, ZipArchive.STORED, 0);
+      }
+    }
+    return path;
+  }
+
+  private static boolean supports(String... args) throws Exception {
+    return PerClassDexCache.supports(CompilerArguments.split(args, Collections.emptyList()));
+  }
+
+  @Test
+  public void supportsOnlyClassFileArchives() throws Exception {
+    String classes = writeArchive("classes.jar", "a/A.class", "res/raw.bin").toString();
+    String mixed = writeArchive("mixed.jar", "a/A.class", "classes.dex").toString();
+    String dex = writeArchive("dex.zip", "classes.dex", "classes2.dex").toString();
+    assertTrue(supports("--release", classes));
+    assertFalse(supports(classes, mixed));
+    assertFalse(supports(dex));
+    assertFalse(supports(directory.resolve("A.class").toString()));
+    assertFalse(supports("--main-dex-list", "list.txt", classes));
+  }
+
+  @Test
+  public void configurationIsPartOfTheKey() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    List<ClassFileInput> program = classes(Greeter.class, Greeting.class);
+    compile(new PerClassDexCache(cacheDirectory, "debug"), program, "debug");
+
+    PerClassDexCache cache = new PerClassDexCache(cacheDirectory, "release");
+    compile(cache, program, "release");
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class PersistentWorkerTest {
+
+  private static Map<Integer, Map<?, ?>> responsesById(String responses) {
+    Map<Integer, Map<?, ?>> byId = new HashMap<>();
+    for (String line : responses.split("\n")) {
+      Map<?, ?> response = (Map<?, ?>) Json.parse(line);
+      Number requestId = (Number) response.get("requestId");
+      assertNull(byId.put(requestId.intValue(), response));
+    }
+    return byId;
+  }
+
+  @Test
+  public void answersEachRequestOnce() throws Exception {
+    String requests =
+        "{\"arguments\":[\"a\"],\"requestId\":1}\n"
+            + "{\"arguments\":[\"b\",\"fail\"],\"requestId\":2}\n"
+            + "{\"requestId\":1,\"cancel\":true}\n"
+            + "{\"arguments\":[],\"requestId\":3}\n";
+    StringWriter responses = new StringWriter();
+    PersistentWorker.run(
+        (args, output) -> {
+          output.print(String.join(" ", args));
+          return args.length > 1 ? 1 : 0;
+        },
+        new StringReader(requests),
+        responses);
+
+    Map<Integer, Map<?, ?>> byId = responsesById(responses.toString());
+    assertEquals(3, byId.size());
+    assertEquals("a", byId.get(1).get("output"));
+    assertEquals(0, ((Number) byId.get(1).get("exitCode")).intValue());
+    assertEquals("b fail", byId.get(2).get("output"));
+    assertEquals(1, ((Number) byId.get(2).get("exitCode")).intValue());
+    assertEquals("", byId.get(3).get("output"));
+  }
+
+  @Test
+  public void reportsExceptionsOfSingleplexRequests() throws Exception {
+    StringWriter responses = new StringWriter();
+    PersistentWorker.run(
+        (args, output) -> {
+          throw new IllegalStateException("broken " + args[0]);
+        },
+        new StringReader("{\"arguments\":[\"x\"]}\n{\"arguments\":[\"y\"]}\n"),
+        responses);
+
+    String[] lines = responses.toString().split("\n");
+    assertEquals(2, lines.length);
+    Map<?, ?> second = (Map<?, ?>) Json.parse(lines[1]);
+    assertEquals(0, ((Number) second.get("requestId")).intValue());
+    assertEquals(1, ((Number) second.get("exitCode")).intValue());
+    assertTrue(((String) second.get("output")).contains("IllegalStateException: broken y"));
+  }
+}
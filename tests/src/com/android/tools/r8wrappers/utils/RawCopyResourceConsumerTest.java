@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.android.tools.r8.AndroidResourceOutput;
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.ResourcePath;
+import com.android.tools.r8.origin.Origin;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RawCopyResourceConsumerTest {
+
+  private static final byte[] LAYOUT = "<LinearLayout/>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TABLE = {1, 2, 3, 4};
+  private static final byte[] SHRUNK_TABLE = {1, 2};
+  // Two contents of the same size and CRC-32.
+  private static final byte[] CRC_COLLISION = "09685295".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] CRC_COLLISION_OTHER = "12060020".getBytes(StandardCharsets.UTF_8);
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("raw-copy-resource-consumer-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static AndroidResourceOutput resource(String location, byte[] data) {
+    return new AndroidResourceOutput() {
+      @Override
+      public ResourcePath getPath() {
+        return () -> location;
+      }
+
+      @Override
+      public ByteDataView getByteDataView() {
+        return ByteDataView.of(data);
+      }
+
+      @Override
+      public Origin getOrigin() {
+        return Origin.unknown();
+      }
+    };
+  }
+
+  private Path writeInput() throws Exception {
+    Path input = directory.resolve("input.ap_");
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(input)) {
+      writer.write("resources.pb", TABLE, ZipArchive.STORED, ZipArchiveWriter.DEFAULT_DOS_TIME);
+      writer.write("res/layout/main.xml", LAYOUT, ZipArchive.DEFLATED, 12345);
+      writer.write("res/layout/unused.xml", LAYOUT, ZipArchive.DEFLATED, 12345);
+      writer.write("res/raw/data.bin", CRC_COLLISION, ZipArchive.DEFLATED, 12345);
+    }
+    return input;
+  }
+
+  private static List<String> names(ZipArchive archive) {
+    List<String> names = new ArrayList<>();
+    for (ZipArchive.Entry entry : archive.getEntries()) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void copiesUnchangedEntriesInAcceptOrder() throws Exception {
+    Path output = directory.resolve("output.ap_");
+    RawCopyResourceConsumer consumer = new RawCopyResourceConsumer(output, writeInput());
+    consumer.accept(resource("res/layout/main.xml", LAYOUT), null);
+    consumer.accept(resource("resources.pb", SHRUNK_TABLE), null);
+    consumer.accept(resource("res/values/added.xml", LAYOUT), null);
+    consumer.finished(null);
+
+    assertEquals(1, consumer.getCopied());
+    assertEquals(2, consumer.getRewritten());
+    ZipArchive archive = ZipArchive.open(output);
+    assertEquals(
+        Arrays.asList("res/layout/main.xml", "resources.pb", "res/values/added.xml"),
+        names(archive));
+    ZipArchive.Entry layout = archive.getEntries().get(0);
+    assertEquals(ZipArchive.DEFLATED, layout.getMethod());
+    assertEquals(12345, layout.getDosTime());
+    assertArrayEquals(LAYOUT, archive.read(layout));
+    ZipArchive.Entry table = archive.getEntries().get(1);
+    assertEquals(ZipArchive.STORED, table.getMethod());
+    assertArrayEquals(SHRUNK_TABLE, archive.read(table));
+    assertEquals(ZipArchive.DEFLATED, archive.getEntries().get(2).getMethod());
+  }
+
+  @Test
+  public void comparesContentNotOnlyChecksum() throws Exception {
+    Path output = directory.resolve("output.ap_");
+    RawCopyResourceConsumer consumer = new RawCopyResourceConsumer(output, writeInput());
+    consumer.accept(resource("res/raw/data.bin", CRC_COLLISION_OTHER), null);
+    consumer.finished(null);
+
+    assertEquals(0, consumer.getCopied());
+    assertEquals(1, consumer.getRewritten());
+    ZipArchive archive = ZipArchive.open(output);
+    assertArrayEquals(CRC_COLLISION_OTHER, archive.read(archive.getEntries().get(0)));
+  }
+
+  @Test
+  public void writesEmptyArchiveWithoutResources() throws Exception {
+    Path output = directory.resolve("output.ap_");
+    RawCopyResourceConsumer consumer = new RawCopyResourceConsumer(output, writeInput());
+    consumer.finished(null);
+    assertEquals(Collections.emptyList(), names(ZipArchive.open(output)));
+  }
+
+  @Test
+  public void discardDeletesUnfinishedOutput() throws Exception {
+    Path output = directory.resolve("output.ap_");
+    RawCopyResourceConsumer consumer = new RawCopyResourceConsumer(output, writeInput());
+    consumer.accept(resource("resources.pb", TABLE), null);
+    consumer.discard();
+    assertFalse(Files.exists(output));
+  }
+}
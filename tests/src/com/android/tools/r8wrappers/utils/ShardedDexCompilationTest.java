@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.OutputMode;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedDexCompilationTest {
+
+  private static final int MIN_API = 21;
+
+  /** Program classes, where the subclass is compiled against its superclass on the classpath. */
+  public static class Base {
+    public String name() {
+      return "base";
+    }
+  }
+
+  public static class Derived extends Base {
+    @Override
+    public String name() {
+      return "derived " + super.name();
+    }
+  }
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("sharded-dex-compilation-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path writeProgram(String... extraEntries) throws Exception {
+    Path jar = directory.resolve("program.jar");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (Class<?> clazz : Arrays.asList(Base.class, Derived.class, TestFiles.class)) {
+        String entry = clazz.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new ZipEntry(entry));
+        try (InputStream in = clazz.getResourceAsStream("/" + entry)) {
+          out.write(in.readAllBytes());
+        }
+      }
+      for (String entry : extraEntries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(new byte[] {1});
+      }
+    }
+    return jar;
+  }
+
+  @Test
+  public void shardedOutputHasTheCodeOfUnshardedOutput() throws Exception {
+    Path program = writeProgram();
+    Path unsharded = Files.createDirectories(directory.resolve("unsharded"));
+    D8.run(
+        D8Command.builder()
+            .addProgramFiles(program)
+            .setMinApiLevel(MIN_API)
+            .setOutput(unsharded, OutputMode.DexIndexed)
+            .build());
+
+    Path sharded = Files.createDirectories(directory.resolve("sharded"));
+    // Every class is larger than a byte, so each is compiled in a shard of its own.
+    ShardedDexCompilation compilation = new ShardedDexCompilation(1, 2);
+    compilation.compile(
+        Collections.singletonList(program),
+        () ->
+            D8Command.builder()
+                .setMinApiLevel(MIN_API)
+                .setOutput(sharded, OutputMode.DexIndexed),
+        builder -> D8.run(builder.build()));
+
+    assertEquals(3, compilation.getShardCount());
+    Path expected = unsharded.resolve("classes.dex");
+    Path actual = sharded.resolve("classes.dex");
+    assertTrue(
+        getClassDescriptors(expected)
+            .contains("L" + Derived.class.getName().replace('.', '/') + ";"));
+    assertEquals(getClassDescriptors(expected), getClassDescriptors(actual));
+    assertEquals(getMethodCode(expected), getMethodCode(actual));
+    assertTrue(Files.notExists(sharded.resolve("classes2.dex")));
+  }
+
+  @Test
+  public void supportsOnlyClassFileArchives() throws Exception {
+    Path program = writeProgram("classes.dex");
+    assertFalse(
+        ShardedDexCompilation.supports(
+            CompilerArguments.split(
+                new String[] {program.toString()}, Collections.emptyList())));
+    // The dex entry would be dropped by the shards, so it fails instead.
+    assertThrows(
+        RuntimeException.class,
+        () ->
+            new ShardedDexCompilation(1, 1)
+                .compile(
+                    Collections.singletonList(program),
+                    () -> D8Command.builder().setMinApiLevel(MIN_API),
+                    builder -> D8.run(builder.build())));
+  }
+
+  /** Reads the descriptors of the classes defined in a dex file. */
+  private static Set<String> getClassDescriptors(Path dex) throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(dex)).order(ByteOrder.LITTLE_ENDIAN);
+    int classDefsSize = buffer.getInt(0x60);
+    int classDefsOffset = buffer.getInt(0x64);
+    Set<String> descriptors = new TreeSet<>();
+    for (int i = 0; i < classDefsSize; i++) {
+      descriptors.add(getType(buffer, buffer.getInt(classDefsOffset + i * 32)));
+    }
+    return descriptors;
+  }
+
+  /**
+   * Reads the methods defined in a dex file, each as its class, name, shorty, register counts and
+   * instructions, sorted.
+   */
+  private static List<String> getMethodCode(Path dex) throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(dex)).order(ByteOrder.LITTLE_ENDIAN);
+    int protoIdsOffset = buffer.getInt(0x4c);
+    int methodIdsOffset = buffer.getInt(0x5c);
+    int classDefsSize = buffer.getInt(0x60);
+    int classDefsOffset = buffer.getInt(0x64);
+    List<String> methods = new ArrayList<>();
+    for (int i = 0; i < classDefsSize; i++) {
+      int classDataOffset = buffer.getInt(classDefsOffset + i * 32 + 24);
+      if (classDataOffset == 0) {
+        continue;
+      }
+      buffer.position(classDataOffset);
+      int staticFields = readUleb128(buffer);
+      int instanceFields = readUleb128(buffer);
+      int directMethods = readUleb128(buffer);
+      int virtualMethods = readUleb128(buffer);
+      for (int j = 0; j < staticFields + instanceFields; j++) {
+        readUleb128(buffer);
+        readUleb128(buffer);
+      }
+      int methodIndex = 0;
+      for (int j = 0; j < directMethods + virtualMethods; j++) {
+        // The index of the first virtual method is not relative to the direct methods.
+        methodIndex = (j == directMethods ? 0 : methodIndex) + readUleb128(buffer);
+        readUleb128(buffer);
+        int codeOffset = readUleb128(buffer);
+        int methodId = methodIdsOffset + methodIndex * 8;
+        int protoId = protoIdsOffset + (buffer.getShort(methodId + 2) & 0xffff) * 12;
+        StringBuilder method =
+            new StringBuilder()
+                .append(getType(buffer, buffer.getShort(methodId) & 0xffff))
+                .append("->")
+                .append(getString(buffer, buffer.getInt(methodId + 4)))
+                .append(' ')
+                .append(getString(buffer, buffer.getInt(protoId)));
+        if (codeOffset != 0) {
+          method
+              .append(" registers=")
+              .append(buffer.getShort(codeOffset) & 0xffff)
+              .append(" ins=")
+              .append(buffer.getShort(codeOffset + 2) & 0xffff)
+              .append(" outs=")
+              .append(buffer.getShort(codeOffset + 4) & 0xffff)
+              .append(" code=");
+          int insnsSize = buffer.getInt(codeOffset + 12);
+          for (int k = 0; k < insnsSize; k++) {
+            method.append(String.format("%04x", buffer.getShort(codeOffset + 16 + k * 2)));
+          }
+        }
+        methods.add(method.toString());
+      }
+    }
+    Collections.sort(methods);
+    return methods;
+  }
+
+  private static String getType(ByteBuffer buffer, int typeIndex) {
+    int typeIdsOffset = buffer.getInt(0x44);
+    return getString(buffer, buffer.getInt(typeIdsOffset + typeIndex * 4));
+  }
+
+  private static String getString(ByteBuffer buffer, int stringIndex) {
+    int stringIdsOffset = buffer.getInt(0x3c);
+    int position = buffer.getInt(stringIdsOffset + stringIndex * 4);
+    // Skip the ULEB128 length, the strings read here are ASCII and terminated by a zero byte.
+    while ((buffer.get(position++) & 0x80) != 0) {}
+    int end = position;
+    while (buffer.get(end) != 0) {
+      end++;
+    }
+    return new String(buffer.array(), position, end - position, StandardCharsets.US_ASCII);
+  }
+
+  private static int readUleb128(ByteBuffer buffer) {
+    int result = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = buffer.get() & 0xff;
+      result |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StartupProfileTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("startup-profile-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private Path writeArchive(String name, String... entries) throws Exception {
+    Path path = directory.resolve(name);
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(path)) {
+      for (String entry : entries) {
+        writer.write(entry, new byte[] {(byte) 0xca, (byte) 0xfe}, ZipArchive.STORED, 0);
+      }
+    }
+    return path;
+  }
+
+  @Test
+  public void reportsRulesAndClassesInProgram() throws Exception {
+    Path path = directory.resolve("startup.txt");
+    StartupProfile profile = new StartupProfile(path);
+    profile.addClassRule("Lcom/example/A;");
+    profile.addClassRule("Lcom/example/A;");
+    profile.addMethodRule("Lcom/example/A;", "run()V");
+    profile.addMethodRule("Lcom/example/B;", "run()V");
+    profile.addMethodRule("Lcom/example/B;", "stop()V");
+    profile.addClassRule("Lcom/example/Missing;");
+
+    Path first = writeArchive("first.jar", "com/example/A.class", "com/example/Other.class");
+    Path second = writeArchive("second.jar", "com/example/B.class", "classes.dex");
+    assertEquals(
+        "Startup profile "
+            + path
+            + ": 2 class rules and 3 method rules, 2 of their 3 classes are in the program"
+            + " (66.7%).",
+        profile.getReport(Arrays.asList(first, second)));
+  }
+
+  @Test
+  public void reportsProfileNotRead() throws Exception {
+    Path path = directory.resolve("startup.txt");
+    StartupProfile profile = new StartupProfile(path);
+    assertEquals(
+        "Startup profile " + path + " was not read by the compiler.",
+        profile.getReport(Collections.emptyList()));
+  }
+
+  @Test
+  public void missingProfileIsAnError() {
+    StartupProfile profile = new StartupProfile(directory.resolve("missing.txt"));
+    assertThrows(RuntimeException.class, () -> profile.getStartupProfile(null));
+  }
+}
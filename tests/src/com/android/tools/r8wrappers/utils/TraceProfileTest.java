@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TraceProfileTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("trace-profile-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private static List<Map<?, ?>> events(Map<?, ?> trace, String phase) {
+    List<Map<?, ?>> events = new ArrayList<>();
+    for (Object event : (List<?>) trace.get("traceEvents")) {
+      if (phase.equals(((Map<?, ?>) event).get("ph"))) {
+        events.add((Map<?, ?>) event);
+      }
+    }
+    return events;
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void writesPhasesInTraceEventFormat() throws Exception {
+    TraceProfile profile = new TraceProfile("r8");
+    profile.recordGarbageCollections();
+    try (TraceProfile.Phase phase = profile.begin("parse \"arguments\"")) {
+      Thread.sleep(2);
+    }
+    long start = TraceProfile.now();
+    profile.complete("R8.run", start);
+    profile.setName("out/app.jar");
+    Path output = directory.resolve("profile.json");
+    profile.write(output);
+
+    Map<?, ?> trace = (Map<?, ?>) Json.parse(Files.readString(output));
+    assertEquals("ms", trace.get("displayTimeUnit"));
+    List<Map<?, ?>> metadata = events(trace, "M");
+    assertEquals("process_name", metadata.get(0).get("name"));
+    assertEquals("out/app.jar", ((Map<?, ?>) metadata.get(0).get("args")).get("name"));
+
+    List<Map<?, ?>> phases = new ArrayList<>();
+    for (Map<?, ?> event : events(trace, "X")) {
+      if ("wrapper".equals(event.get("cat"))) {
+        phases.add(event);
+      }
+    }
+    assertEquals(2, phases.size());
+    assertEquals("parse \"arguments\"", phases.get(0).get("name"));
+    assertTrue(((Number) phases.get(0).get("ts")).longValue() >= profile.getStartTime());
+    assertTrue(((Number) phases.get(0).get("dur")).longValue() >= 2000);
+    assertEquals(ProcessHandle.current().pid(), ((Number) phases.get(0).get("pid")).longValue());
+    assertEquals("R8.run", phases.get(1).get("name"));
+    assertEquals(start, ((Number) phases.get(1).get("ts")).longValue());
+
+    // Heap usage is sampled after each phase and when written.
+    assertTrue(events(trace, "C").size() >= 3);
+    Map<?, ?> otherData = (Map<?, ?>) trace.get("otherData");
+    assertTrue(((Number) otherData.get("heap high-water MB")).longValue() >= 0);
+  }
+}
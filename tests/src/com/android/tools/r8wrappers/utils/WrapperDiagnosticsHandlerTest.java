@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.Diagnostic;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+import com.android.tools.r8.position.Position;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WrapperDiagnosticsHandlerTest {
+
+  /** Diagnostics of two kinds, which are limited separately. */
+  private static class FirstDiagnostic implements Diagnostic {
+    private final Origin origin;
+    private final String message;
+
+    FirstDiagnostic(String origin, String message) {
+      this.origin = new PathOrigin(Paths.get(origin));
+      this.message = message;
+    }
+
+    @Override
+    public Origin getOrigin() {
+      return origin;
+    }
+
+    @Override
+    public Position getPosition() {
+      return Position.UNKNOWN;
+    }
+
+    @Override
+    public String getDiagnosticMessage() {
+      return message;
+    }
+  }
+
+  private static class SecondDiagnostic extends FirstDiagnostic {
+    SecondDiagnostic(String origin, String message) {
+      super(origin, message);
+    }
+  }
+
+  private Path directory;
+  private ByteArrayOutputStream captured;
+  private WrapperDiagnosticsHandler handler;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("wrapper-diagnostics-handler-test");
+    captured = new ByteArrayOutputStream();
+    handler = new WrapperDiagnosticsHandler();
+    handler.setOutput(new PrintStream(captured, true, "UTF-8"));
+    handler.setLimit(2);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  private String output() {
+    return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /** Reports five first warnings, three of them in b.jar, a second warning and three errors. */
+  private void reportDiagnostics() {
+    for (int i = 0; i < 5; i++) {
+      handler.warning(new FirstDiagnostic(i < 3 ? "b.jar" : "a.jar", "first " + i));
+    }
+    handler.warning(new SecondDiagnostic("a.jar", "second"));
+    for (int i = 0; i < 3; i++) {
+      handler.error(new FirstDiagnostic("a.jar", "error " + i));
+    }
+  }
+
+  @Test
+  public void printsAtMostLimitWarningsOfEachKind() throws Exception {
+    reportDiagnostics();
+    handler.finish();
+    String output = output();
+    assertTrue(output, output.contains("first 0"));
+    assertTrue(output, output.contains("first 1"));
+    assertFalse(output, output.contains("first 2"));
+    assertTrue(output, output.contains("second"));
+    // Errors are not limited.
+    for (int i = 0; i < 3; i++) {
+      assertTrue(output, output.contains("error " + i));
+    }
+  }
+
+  @Test
+  public void summarizesDiagnosticsNotPrinted() throws Exception {
+    Path report = directory.resolve("report.json");
+    handler.setReport(report);
+    reportDiagnostics();
+    handler.finish();
+    String output = output();
+    assertTrue(
+        output,
+        output.contains(
+            "Warning: 3 more FirstDiagnostic diagnostics not printed, 5 in total from 2 origins,"
+                + " most in b.jar (3), see "
+                + report
+                + "."));
+    // Only the kind with diagnostics not printed is summarized.
+    assertFalse(output, output.contains("more SecondDiagnostic"));
+  }
+
+  @Test
+  public void writesAllDiagnosticsToTheReport() throws Exception {
+    Path report = directory.resolve("out/report.json");
+    handler.setReport(report);
+    reportDiagnostics();
+    handler.finish();
+    List<Map<?, ?>> records = new ArrayList<>();
+    try (Reader reader = Files.newBufferedReader(report)) {
+      Json json = new Json(reader);
+      while (json.hasNext()) {
+        records.add((Map<?, ?>) json.next());
+      }
+    }
+    assertEquals(9, records.size());
+    int printed = 0;
+    for (Map<?, ?> record : records) {
+      if ((Boolean) record.get("printed")) {
+        printed++;
+      }
+    }
+    assertEquals(6, printed);
+    Map<?, ?> fifth = records.get(4);
+    assertEquals("Warning", fifth.get("level"));
+    assertEquals("FirstDiagnostic", fifth.get("kind"));
+    assertEquals("a.jar", fifth.get("origin"));
+    assertEquals("first 4", fifth.get("message"));
+    assertEquals(false, fifth.get("printed"));
+  }
+
+  @Test
+  public void printsDiagnosticsReportedAfterFinish() throws Exception {
+    handler.finish();
+    handler.warning(new FirstDiagnostic("a.jar", "late"));
+    assertTrue(output(), output().contains("late"));
+  }
+}
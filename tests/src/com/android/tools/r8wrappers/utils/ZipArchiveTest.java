@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.r8wrappers.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipArchiveTest {
+
+  private static final byte[] TEXT =
+      String.join("", Collections.nCopies(100, "compressible text\n"))
+          .getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TABLE = {1, 2, 3, 4};
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("zip-archive-test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TestFiles.deleteRecursively(directory);
+  }
+
+  /** Writes an archive with the JDK, which uses data descriptors for deflated entries. */
+  private Path writeWithJdk() throws Exception {
+    Path path = directory.resolve("jdk.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+      out.putNextEntry(new ZipEntry("res/text.txt"));
+      out.write(TEXT);
+      ZipEntry stored = new ZipEntry("resources.pb");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(TABLE.length);
+      CRC32 crc = new CRC32();
+      crc.update(TABLE);
+      stored.setCrc(crc.getValue());
+      out.putNextEntry(stored);
+      out.write(TABLE);
+      out.putNextEntry(new ZipEntry("res/empty.txt"));
+    }
+    return path;
+  }
+
+  private static byte[] readWithJdk(Path path, String name) throws IOException {
+    try (ZipFile zipFile = new ZipFile(path.toFile());
+        InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static List<String> names(ZipArchive archive) {
+    List<String> names = new ArrayList<>();
+    for (ZipArchive.Entry entry : archive.getEntries()) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void readsArchiveOfTheJdk() throws Exception {
+    ZipArchive archive = ZipArchive.open(writeWithJdk());
+    assertEquals(Arrays.asList("res/text.txt", "resources.pb", "res/empty.txt"), names(archive));
+    ZipArchive.Entry text = archive.getEntries().get(0);
+    assertEquals(ZipArchive.DEFLATED, text.getMethod());
+    assertEquals(TEXT.length, text.getSize());
+    assertArrayEquals(TEXT, archive.read(text));
+    ZipArchive.Entry table = archive.getEntries().get(1);
+    assertEquals(ZipArchive.STORED, table.getMethod());
+    assertArrayEquals(TABLE, archive.read(table));
+    assertEquals(0, archive.read(archive.getEntries().get(2)).length);
+  }
+
+  @Test
+  public void copiesEntriesWithoutRecompressing() throws Exception {
+    ZipArchive input = ZipArchive.open(writeWithJdk());
+    Path output = directory.resolve("copy.zip");
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+      for (ZipArchive.Entry entry : input.getEntries()) {
+        writer.copy(input, entry);
+      }
+    }
+    assertArrayEquals(TEXT, readWithJdk(output, "res/text.txt"));
+    assertArrayEquals(TABLE, readWithJdk(output, "resources.pb"));
+    ZipArchive copy = ZipArchive.open(output);
+    assertEquals(names(input), names(copy));
+    for (int i = 0; i < input.getEntries().size(); i++) {
+      ZipArchive.Entry inputEntry = input.getEntries().get(i);
+      ZipArchive.Entry copyEntry = copy.getEntries().get(i);
+      assertEquals(inputEntry.getMethod(), copyEntry.getMethod());
+      assertEquals(inputEntry.getCrc(), copyEntry.getCrc());
+      assertEquals(inputEntry.getDosTime(), copyEntry.getDosTime());
+      assertEquals(input.getRawData(inputEntry), copy.getRawData(copyEntry));
+    }
+  }
+
+  @Test
+  public void writesStoredAndDeflatedEntries() throws Exception {
+    Path output = directory.resolve("written.zip");
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+      writer.write("deflated", TEXT, ZipArchive.DEFLATED, ZipArchiveWriter.DEFAULT_DOS_TIME);
+      writer.write("stored", TABLE, ZipArchive.STORED, ZipArchiveWriter.DEFAULT_DOS_TIME);
+      writer.write("\u00fcnicode", new byte[0], ZipArchive.STORED, 0);
+      assertThrows(IOException.class, () -> writer.write("bzip2", TABLE, 12, 0));
+    }
+    assertArrayEquals(TEXT, readWithJdk(output, "deflated"));
+    assertArrayEquals(TABLE, readWithJdk(output, "stored"));
+    assertArrayEquals(new byte[0], readWithJdk(output, "\u00fcnicode"));
+    ZipArchive archive = ZipArchive.open(output);
+    ZipArchive.Entry deflated = archive.getEntries().get(0);
+    assertEquals(ZipArchive.DEFLATED, deflated.getMethod());
+    assertEquals(TEXT.length, deflated.getSize());
+    ByteBuffer raw = archive.getRawData(deflated);
+    assertEquals(deflated.getCompressedSize(), raw.remaining());
+    assertArrayEquals(TEXT, archive.read(deflated));
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws Exception {
+    Path text = Files.write(directory.resolve("text.txt"), TEXT);
+    assertThrows(IOException.class, () -> ZipArchive.open(text));
+  }
+}